@@ -11,6 +11,15 @@ public class Common {
 
     public static final long SEED = 1234;
 
+    // Transform model-local vertices with 32-bit int products
+    // (Fixed16MatMath) for objects the camera is not close to; false keeps
+    // every object on the 64-bit path
+    public static final boolean INT_TRANSFORM = true;
+
+    // Debug builds: route FixedBaseMath's unchecked arithmetic through the
+    // saturating tier and print a stack trace at every overflow
+    public static final boolean DEBUG_OVERFLOW = false;
+
     private Common() {
     }
 }
@@ -0,0 +1,117 @@
+package FixedMath;
+
+/**
+ * 32-bit transform path for model-local vertices. Matrix terms and vertex
+ * offsets are block scaled: each set shares one power of two and keeps a
+ * 16-bit significand, so the per-vertex products are int * int and only the
+ * three row sums widen to the 64-bit format.
+ */
+public final class Fixed16MatMath {
+
+    // Terms stay within 2^15 and offsets within 2^14, so every product is
+    // within 2^29 and a sum of three still fits an int
+    public static final int TERM_BITS = 15;
+    public static final int OFFSET_BITS = 14;
+
+    /**
+     * Right shift that brings magnitudes up to maxAbs within 2^bits, or 0
+     * when they already are.
+     */
+    public static int blockShift(long maxAbs, int bits) {
+        int shift = FixedBaseMath.highestBit(maxAbs) + 1 - bits;
+        return (shift > 0) ? shift : 0;
+    }
+
+    /**
+     * v >> shift, rounded to nearest.
+     */
+    public static int scaleDown(long v, int shift) {
+        if (shift == 0) {
+            return (int) v;
+        }
+        return (int) ((v + (1L << (shift - 1))) >> shift);
+    }
+
+    /**
+     * Loads the linear part of an affine FixedMatMath matrix into out[0..8],
+     * row by row, as TERM_BITS significands. Returns their shared shift:
+     * term (r, c) is about out[r * 3 + c] << shift in Q.
+     */
+    public static int linearTerms(long[] m, int[] out) {
+        long bits = 0;
+        for (int row = 0; row < 12; row += 4) {
+            for (int col = 0; col < 3; col++) {
+                long v = m[row + col];
+                bits |= (v < 0) ? -v : v;
+            }
+        }
+        int shift = blockShift(bits, TERM_BITS);
+        int k = 0;
+        for (int row = 0; row < 12; row += 4) {
+            for (int col = 0; col < 3; col++) {
+                out[k++] = scaleDown(m[row + col], shift);
+            }
+        }
+        return shift;
+    }
+
+    /**
+     * Batch transform of block-scaled offsets, the int counterpart of
+     * FixedMatMath.transformPoints: for i in [from, from + count), the
+     * camera-space point base + m * (dx, dy, dz)[i] is projected by persp (a
+     * createPerspective4x4 matrix) into dstX/Y/Z/W[i]. m comes from
+     * linearTerms with termShift, the offsets have OFFSET_BITS significands
+     * scaled by offsetShift, and base is in Q. Outcodes are written as by
+     * FixedMatMath.transformPoints unless outcodes is null.
+     */
+    public static void transformOffsets(int[] m, int termShift, long[] base, long[] persp,
+            int[] dx, int[] dy, int[] dz, int offsetShift, int from, int count,
+            long[] dstX, long[] dstY, long[] dstZ, long[] dstW, int[] outcodes) {
+        int m0 = m[0], m1 = m[1], m2 = m[2];
+        int m3 = m[3], m4 = m[4], m5 = m[5];
+        int m6 = m[6], m7 = m[7], m8 = m[8];
+        // Each row sum is scaled by 2^(termShift + offsetShift) and the
+        // product of two Q values by 2^FIXED_SHIFT
+        int shift = termShift + offsetShift - FixedBaseMath.FIXED_SHIFT;
+        int up = (shift > 0) ? shift : 0;
+        int down = up - shift;
+        long bx = base[0], by = base[1], bz = base[2];
+        long sx = persp[0], sy = persp[5], sz = persp[10], tz = persp[11];
+        int end = from + count;
+        for (int i = from; i < end; i++) {
+            int x = dx[i];
+            int y = dy[i];
+            int z = dz[i];
+            long ex = bx + (((long) (m0 * x + m1 * y + m2 * z) << up) >> down);
+            long ey = by + (((long) (m3 * x + m4 * y + m5 * z) << up) >> down);
+            long ez = bz + (((long) (m6 * x + m7 * y + m8 * z) << up) >> down);
+            long cx = (sx * ex) >> FixedBaseMath.FIXED_SHIFT;
+            long cy = (sy * ey) >> FixedBaseMath.FIXED_SHIFT;
+            long cw = -ez;
+            dstX[i] = cx;
+            dstY[i] = cy;
+            dstZ[i] = ((sz * ez) >> FixedBaseMath.FIXED_SHIFT) + tz;
+            dstW[i] = cw;
+            if (outcodes != null) {
+                int code = 0;
+                if (cx < -cw) {
+                    code |= FixedMatMath.CLIP_LEFT;
+                } else if (cx > cw) {
+                    code |= FixedMatMath.CLIP_RIGHT;
+                }
+                if (cy < -cw) {
+                    code |= FixedMatMath.CLIP_BOTTOM;
+                } else if (cy > cw) {
+                    code |= FixedMatMath.CLIP_TOP;
+                }
+                if (cw <= 0) {
+                    code |= FixedMatMath.CLIP_BEHIND;
+                }
+                outcodes[i] = code;
+            }
+        }
+    }
+
+    private Fixed16MatMath() {
+    }
+}
@@ -1,5 +1,7 @@
 package FixedMath;
 
+import Constants.Common;
+
 /*
  * FixedBaseMath
  *
@@ -84,74 +86,203 @@ public final class FixedBaseMath {
         return (int) (fixedVal >> FIXED_SHIFT);
     }
 
+    public static long fromInt(int val) {
+        return (long) val << FIXED_SHIFT;
+    }
+
+    // Unchecked tier: plain two's complement arithmetic, for the render
+    // kernels and everything else whose ranges are known. Overflow wraps.
+
     public static long fixedAdd(long a, long b) {
-        long result = a + b;
-        if (result > MAX_FIXED) {
-            //System.out.print("\n Addition overflow \n");
-            return MAX_FIXED;
-        }
-        if (result < MIN_FIXED) {
-            //System.out.print("\n Addition underflow \n");
-            return MIN_FIXED;
+        if (Common.DEBUG_OVERFLOW) {
+            return satAdd(a, b);
         }
-        return result;
+        return a + b;
     }
 
     public static long fixedSub(long a, long b) {
-        long result = a - b;
-        if (result > MAX_FIXED) {
-            //System.out.print("\n Subtraction overflow \n");
-            return MAX_FIXED;
+        if (Common.DEBUG_OVERFLOW) {
+            return satSub(a, b);
         }
-        if (result < MIN_FIXED) {
-            //System.out.print("\n Subtraction underflow \n");
-            return MIN_FIXED;
-        }
-        return result;
+        return a - b;
     }
 
     public static long fixedMul(long a, long b) {
-        long result = (a * b) >> FIXED_SHIFT;
-        if (result > MAX_FIXED) {
-            //System.out.print("\n Multiplication overflow \n");
-            return MAX_FIXED;
+        if (Common.DEBUG_OVERFLOW) {
+            return satMul(a, b);
         }
-        if (result < MIN_FIXED) {
-            //System.out.print("\n Multiplication underflow \n");
-            return MIN_FIXED;
-        }
-        return result;
+        return (a * b) >> FIXED_SHIFT;
     }
 
     public static long fixedDiv(long a, long b) {
+        if (Common.DEBUG_OVERFLOW) {
+            return satDiv(a, b);
+        }
         if (b == 0) {
-            //System.out.print("\n Division by zero \n");
             return (a >= 0) ? MAX_FIXED : MIN_FIXED;
         }
-        long result = (a << FIXED_SHIFT) / b;
-        if (result > MAX_FIXED) {
-            //System.out.print("\n Division overflow \n");
-            return MAX_FIXED;
+        return (a << FIXED_SHIFT) / b;
+    }
+
+    // Saturating tier: detects overflow and clamps to MAX_FIXED / MIN_FIXED.
+    // Each has a cheap magnitude check in front of the exact path.
+
+    public static long satAdd(long a, long b) {
+        long result = a + b;
+        // Overflow iff both operands have the sign the result lacks
+        if (((a ^ result) & (b ^ result)) < 0) {
+            return overflow("satAdd", a < 0);
         }
-        if (result < MIN_FIXED) {
-            //System.out.print("\n Division underflow \n");
-            return MIN_FIXED;
+        return result;
+    }
+
+    public static long satSub(long a, long b) {
+        long result = a - b;
+        if (((a ^ b) & (a ^ result)) < 0) {
+            return overflow("satSub", a < 0);
         }
         return result;
     }
 
+    public static long satMul(long a, long b) {
+        long ua = (a < 0) ? -a : a;
+        long ub = (b < 0) ? -b : b;
+        if (((ua | ub) >>> 31) == 0) {
+            // Both below 2^31: the raw product cannot overflow
+            return (a * b) >> FIXED_SHIFT;
+        }
+        boolean negative = (a ^ b) < 0;
+        if (ua < 0 || ub < 0) {
+            // MIN_VALUE has no positive counterpart
+            return overflow("satMul", negative);
+        }
+        // |a * b| >> F from F-bit halves, every partial product fits in 63 bits:
+        // aH bH 2^F + aH bL + aL bH + (aL bL >> F)
+        long mask = FIXED_SCALE - 1;
+        long aH = ua >> FIXED_SHIFT;
+        long aL = ua & mask;
+        long bH = ub >> FIXED_SHIFT;
+        long bL = ub & mask;
+        if (aH != 0 && bH > (MAX_FIXED >> FIXED_SHIFT) / aH) {
+            return overflow("satMul", negative);
+        }
+        // Negative results round towards -infinity like the unchecked tier
+        long sum = ((aL * bL) + (negative ? mask : 0)) >> FIXED_SHIFT;
+        sum += (aH * bH) << FIXED_SHIFT;
+        if (sum < 0) {
+            return overflow("satMul", negative);
+        }
+        sum += aH * bL;
+        if (sum < 0) {
+            return overflow("satMul", negative);
+        }
+        sum += aL * bH;
+        if (sum < 0) {
+            return overflow("satMul", negative);
+        }
+        return negative ? -sum : sum;
+    }
+
+    public static long satDiv(long a, long b) {
+        if (b == 0) {
+            return overflow("satDiv", a < 0);
+        }
+        long limit = 1L << (63 - FIXED_SHIFT);
+        if (a < limit && a > -limit) {
+            return (a << FIXED_SHIFT) / b;
+        }
+        // a / b = q + r / b, with |r| < |b|
+        long q = a / b;
+        if (q >= limit || q <= -limit) {
+            return overflow("satDiv", (a ^ b) < 0);
+        }
+        long r = a % b;
+        // r << F only overflows when b is itself that large; drop low bits
+        // of both, which costs nothing at Q resolution
+        while (r >= limit || r <= -limit) {
+            r >>= 1;
+            b >>= 1;
+        }
+        return (q << FIXED_SHIFT) + (r << FIXED_SHIFT) / b;
+    }
+
+    private static long overflow(String op, boolean negative) {
+        if (Common.DEBUG_OVERFLOW) {
+            new ArithmeticException(op + " overflow").printStackTrace();
+        }
+        return negative ? MIN_FIXED : MAX_FIXED;
+    }
+
+    /**
+     * Square root of x in Q, integer only. x is first normalized so the
+     * integer root always has 30-31 significant bits, whatever the magnitude.
+     */
     public static long sqrt(long x) {
         if (x <= 0) {
             return 0;
         }
-        int F = FixedBaseMath.FIXED_SHIFT; // Supports arbitrary shift F
-
-        double value = (double) x / (1L << F); // Convert fixed to float
-
-        double sqrtValue = Math.sqrt(value);  // Compute sqrt in floating-point
+        // x << t has its top bit at 60 or 61, with F + t even
+        int t = 60 - highestBit(x);
+        if (((FIXED_SHIFT + t) & 1) != 0) {
+            t++;
+        }
+        long root = isqrt((t >= 0) ? x << t : x >> -t);
+        // sqrt(x * 2^F) = root * 2^((F - t) / 2)
+        int e = (FIXED_SHIFT - t) >> 1;
+        return (e >= 0) ? root << e : root >> -e;
+    }
 
-        return (long) (sqrtValue * (1L << F)); // Convert back to fixed
+    /**
+     * Integer square root, floor(sqrt(n)) for n >= 0, computed bit by bit.
+     */
+    public static long isqrt(long n) {
+        long root = 0;
+        long bit = 1L << 62;
+        while (bit > n) {
+            bit >>= 2;
+        }
+        while (bit != 0) {
+            long trial = root + bit;
+            if (n >= trial) {
+                n -= trial;
+                root = (root >> 1) + bit;
+            } else {
+                root >>= 1;
+            }
+            bit >>= 2;
+        }
+        return root;
+    }
 
+    /**
+     * Index of the highest set bit of x, which must be positive.
+     */
+    public static int highestBit(long x) {
+        int n = 0;
+        if ((x >>> 32) != 0) {
+            x >>>= 32;
+            n += 32;
+        }
+        if ((x >>> 16) != 0) {
+            x >>>= 16;
+            n += 16;
+        }
+        if ((x >>> 8) != 0) {
+            x >>>= 8;
+            n += 8;
+        }
+        if ((x >>> 4) != 0) {
+            x >>>= 4;
+            n += 4;
+        }
+        if ((x >>> 2) != 0) {
+            x >>>= 2;
+            n += 2;
+        }
+        if ((x >>> 1) != 0) {
+            n += 1;
+        }
+        return n;
     }
 
     public static long pow(long base, float exponent) {
@@ -165,10 +296,10 @@ public final class FixedBaseMath {
         float expFrac = exponent - expInt;
         long resultInt = FIXED1;
         for (int i = 0; i < expInt; i++) {
-            resultInt = fixedMul(resultInt, base);
+            resultInt = satMul(resultInt, base);
         }
         long resultFrac = powFractional(base, expFrac);
-        return fixedMul(resultInt, resultFrac);
+        return satMul(resultInt, resultFrac);
     }
 
     private static long powFractional(long base, float expFrac) {
@@ -187,10 +318,10 @@ public final class FixedBaseMath {
     }
 
     public static long fixedHypot3D(long x, long y, long z) {
-        long squareX = fixedMul(x, x);
-        long squareY = fixedMul(y, y);
-        long squareZ = fixedMul(z, z);
-        long sumSquares = fixedAdd(fixedAdd(squareX, squareY), squareZ);
+        long squareX = satMul(x, x);
+        long squareY = satMul(y, y);
+        long squareZ = satMul(z, z);
+        long sumSquares = satAdd(satAdd(squareX, squareY), squareZ);
         return sqrt(sumSquares);
     }
 
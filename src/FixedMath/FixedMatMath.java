@@ -8,9 +8,44 @@ public final class FixedMatMath {
     private static final Hashtable pool = new Hashtable();
     private static final int MAX_IDLE_POOL_SIZE = 1024;
 
-    public static synchronized long[] acquireMatrix() {
+    // Affine matrices are the top three rows of a 4x4, same row-major
+    // indexing, with an implied bottom row [0, 0, 0, 1]. Any 4x4 whose bottom
+    // row is that can be passed where an affine input is expected.
+    public static final int AFFINE_SIZE = 12;
+
+    // Clip outcodes written by transformPoints. Two points whose codes share
+    // a bit lie outside the same plane, so nothing between them is visible.
+    public static final int CLIP_LEFT = 1;    // x < -w
+    public static final int CLIP_RIGHT = 2;   // x > w
+    public static final int CLIP_BOTTOM = 4;  // y < -w
+    public static final int CLIP_TOP = 8;     // y > w
+    public static final int CLIP_BEHIND = 16; // w <= 0
+
+    public static long[] acquireMatrix() {
+        return acquire(16);
+    }
+
+    public static void releaseMatrix(long[] m) {
+        if (m == null || m.length != 16) {
+            return;
+        }
+        release(m);
+    }
+
+    public static long[] acquireAffine() {
+        return acquire(AFFINE_SIZE);
+    }
+
+    public static void releaseAffine(long[] m) {
+        if (m == null || m.length != AFFINE_SIZE) {
+            return;
+        }
+        release(m);
+    }
+
+    private static synchronized long[] acquire(int size) {
         if (!pool.isEmpty()) {
-            Vector vecPool = (Vector) pool.get(new Integer(16));
+            Vector vecPool = (Vector) pool.get(new Integer(size));
             if (vecPool != null && !vecPool.isEmpty()) {
                 int index = vecPool.size() - 1;
                 long[] m = (long[]) vecPool.elementAt(index);
@@ -18,14 +53,11 @@ public final class FixedMatMath {
                 return m;
             }
         }
-        return new long[16];
+        return new long[size];
     }
 
-    public static synchronized void releaseMatrix(long[] m) {
-        if (m == null || m.length != 16) {
-            return;
-        }
-        Integer key = new Integer(16);
+    private static synchronized void release(long[] m) {
+        Integer key = new Integer(m.length);
         Vector vecPool = (Vector) pool.get(key);
         if (vecPool == null) {
             vecPool = new Vector();
@@ -66,35 +98,28 @@ public final class FixedMatMath {
     }
 
     public static long[] createRotationX4x4(long angle) {
-        long sin = FixedTrigMath.sin(angle);
-        long cos = FixedTrigMath.cos(angle);
         long[] m = createIdentity4x4();
-        m[5] = cos;
-        m[6] = FixedBaseMath.fixedMul(FixedBaseMath.FIXEDNEG1, sin);
-        m[9] = sin;
-        m[10] = cos;
+        FixedTrigMath.sincos(angle, m, 9); // m[9] = sin, m[10] = cos
+        m[5] = m[10];
+        m[6] = -m[9];
         return m;
     }
 
     public static long[] createRotationY4x4(long angle) {
-        long sin = FixedTrigMath.sin(angle);
-        long cos = FixedTrigMath.cos(angle);
         long[] m = createIdentity4x4();
-        m[0] = cos;
-        m[2] = sin;
-        m[8] = FixedBaseMath.fixedMul(FixedBaseMath.FIXEDNEG1, sin);
-        m[10] = cos;
+        FixedTrigMath.sincos(angle, m, 2); // m[2] = sin, m[3] = cos
+        m[0] = m[3];
+        m[10] = m[3];
+        m[8] = -m[2];
+        m[3] = 0;
         return m;
     }
 
     public static long[] createRotationZ4x4(long angle) {
-        long sin = FixedTrigMath.sin(angle);
-        long cos = FixedTrigMath.cos(angle);
         long[] m = createIdentity4x4();
-        m[0] = cos;
-        m[1] = FixedBaseMath.fixedMul(FixedBaseMath.FIXEDNEG1, sin);
-        m[4] = sin;
-        m[5] = cos;
+        FixedTrigMath.sincos(angle, m, 4); // m[4] = sin, m[5] = cos
+        m[0] = m[5];
+        m[1] = -m[4];
         return m;
     }
 
@@ -148,6 +173,92 @@ public final class FixedMatMath {
         return r;
     }
 
+    /**
+     * Product of two affine matrices: 27 multiplies for the linear part and
+     * 9 for the translation, against 64 for multiply4x4.
+     */
+    public static long[] multiplyAffine(long[] a, long[] b) {
+        long[] r = acquireAffine();
+        for (int row = 0; row < 12; row += 4) {
+            long a0 = a[row];
+            long a1 = a[row + 1];
+            long a2 = a[row + 2];
+            r[row] = (a0 * b[0] + a1 * b[4] + a2 * b[8]) >> FixedBaseMath.FIXED_SHIFT;
+            r[row + 1] = (a0 * b[1] + a1 * b[5] + a2 * b[9]) >> FixedBaseMath.FIXED_SHIFT;
+            r[row + 2] = (a0 * b[2] + a1 * b[6] + a2 * b[10]) >> FixedBaseMath.FIXED_SHIFT;
+            r[row + 3] = ((a0 * b[3] + a1 * b[7] + a2 * b[11]) >> FixedBaseMath.FIXED_SHIFT) + a[row + 3];
+        }
+        return r;
+    }
+
+    /**
+     * Inverse of a rigid affine matrix (rotation and translation only):
+     * the transposed rotation and the translation rotated back and negated.
+     */
+    public static long[] inverseRigidAffine(long[] m) {
+        long[] r = acquireAffine();
+        r[0] = m[0];
+        r[1] = m[4];
+        r[2] = m[8];
+        r[4] = m[1];
+        r[5] = m[5];
+        r[6] = m[9];
+        r[8] = m[2];
+        r[9] = m[6];
+        r[10] = m[10];
+        long tx = m[3];
+        long ty = m[7];
+        long tz = m[11];
+        r[3] = -((r[0] * tx + r[1] * ty + r[2] * tz) >> FixedBaseMath.FIXED_SHIFT);
+        r[7] = -((r[4] * tx + r[5] * ty + r[6] * tz) >> FixedBaseMath.FIXED_SHIFT);
+        r[11] = -((r[8] * tx + r[9] * ty + r[10] * tz) >> FixedBaseMath.FIXED_SHIFT);
+        return r;
+    }
+
+    /**
+     * out = m * (x, y, z, 1) for an affine m, 9 multiplies. out needs 3 slots.
+     */
+    public static void transformPointAffine(long[] m, long[] xyz, long[] out) {
+        long x = xyz[0];
+        long y = xyz[1];
+        long z = xyz[2];
+        out[0] = ((m[0] * x + m[1] * y + m[2] * z) >> FixedBaseMath.FIXED_SHIFT) + m[3];
+        out[1] = ((m[4] * x + m[5] * y + m[6] * z) >> FixedBaseMath.FIXED_SHIFT) + m[7];
+        out[2] = ((m[8] * x + m[9] * y + m[10] * z) >> FixedBaseMath.FIXED_SHIFT) + m[11];
+    }
+
+    /**
+     * Clip coordinates of a camera-space point under a createPerspective4x4
+     * matrix, using only its non-zero terms: x and y scale, the z row and
+     * w = -z. out needs 4 slots.
+     */
+    public static void projectPoint(long[] persp, long[] cam, long[] out) {
+        long z = cam[2];
+        out[0] = (persp[0] * cam[0]) >> FixedBaseMath.FIXED_SHIFT;
+        out[1] = (persp[5] * cam[1]) >> FixedBaseMath.FIXED_SHIFT;
+        out[2] = ((persp[10] * z) >> FixedBaseMath.FIXED_SHIFT) + persp[11];
+        out[3] = -z;
+    }
+
+    /**
+     * persp * m as a full 4x4, for an affine m and a createPerspective4x4
+     * matrix: 12 multiplies.
+     */
+    public static long[] projectAffine(long[] persp, long[] m) {
+        long[] r = acquireMatrix();
+        long sx = persp[0];
+        long sy = persp[5];
+        long sz = persp[10];
+        for (int col = 0; col < 4; col++) {
+            r[col] = (sx * m[col]) >> FixedBaseMath.FIXED_SHIFT;
+            r[4 + col] = (sy * m[4 + col]) >> FixedBaseMath.FIXED_SHIFT;
+            r[8 + col] = (sz * m[8 + col]) >> FixedBaseMath.FIXED_SHIFT;
+            r[12 + col] = -m[8 + col];
+        }
+        r[11] += persp[11];
+        return r;
+    }
+
     public static void transformPoint(long[] m4x4, long[] xyz, long[] out) {
         long w;
         if (xyz.length == 3) {
@@ -165,6 +276,54 @@ public final class FixedMatMath {
         }
     }
 
+    /**
+     * Batch form of transformPointAffine followed by projectPoint over
+     * structure-of-arrays points: point i in [from, from + count) is read
+     * from srcX/Y/Z[i], taken to camera space by the affine m and projected
+     * by persp, a createPerspective4x4 matrix, for 12 multiplies. Its clip
+     * coordinates are written to dstX/Y/Z/W[i] and, unless outcodes is null,
+     * its clip outcodes (CLIP_*) to outcodes[i] in the same pass.
+     */
+    public static void transformPoints(long[] m, long[] persp,
+            long[] srcX, long[] srcY, long[] srcZ, int from, int count,
+            long[] dstX, long[] dstY, long[] dstZ, long[] dstW, int[] outcodes) {
+        long m0 = m[0], m1 = m[1], m2 = m[2], m3 = m[3];
+        long m4 = m[4], m5 = m[5], m6 = m[6], m7 = m[7];
+        long m8 = m[8], m9 = m[9], m10 = m[10], m11 = m[11];
+        long sx = persp[0], sy = persp[5], sz = persp[10], tz = persp[11];
+        int end = from + count;
+        for (int i = from; i < end; i++) {
+            long x = srcX[i];
+            long y = srcY[i];
+            long z = srcZ[i];
+            long ez = ((m8 * x + m9 * y + m10 * z) >> FixedBaseMath.FIXED_SHIFT) + m11;
+            long cx = (sx * (((m0 * x + m1 * y + m2 * z) >> FixedBaseMath.FIXED_SHIFT) + m3)) >> FixedBaseMath.FIXED_SHIFT;
+            long cy = (sy * (((m4 * x + m5 * y + m6 * z) >> FixedBaseMath.FIXED_SHIFT) + m7)) >> FixedBaseMath.FIXED_SHIFT;
+            long cw = -ez;
+            dstX[i] = cx;
+            dstY[i] = cy;
+            dstZ[i] = ((sz * ez) >> FixedBaseMath.FIXED_SHIFT) + tz;
+            dstW[i] = cw;
+            if (outcodes != null) {
+                int code = 0;
+                if (cx < -cw) {
+                    code |= CLIP_LEFT;
+                } else if (cx > cw) {
+                    code |= CLIP_RIGHT;
+                }
+                if (cy < -cw) {
+                    code |= CLIP_BOTTOM;
+                } else if (cy > cw) {
+                    code |= CLIP_TOP;
+                }
+                if (cw <= 0) {
+                    code |= CLIP_BEHIND;
+                }
+                outcodes[i] = code;
+            }
+        }
+    }
+
     public static long[] transformVector4x4(long[] m, long[] xyz) {
         long[] out3 = new long[3];
         for (int row = 0; row < 3; row++) {
@@ -219,13 +378,19 @@ public final class FixedMatMath {
     }
 
     public static long[] createPerspective4x4(long fovY, long aspect, long near, long far) {
+        long[] m = acquireMatrix();
+        setPerspective4x4(fovY, aspect, near, far, m);
+        return m;
+    }
 
+    /**
+     * Writes the createPerspective4x4 matrix into m. fovY is in degrees.
+     */
+    public static void setPerspective4x4(long fovY, long aspect, long near, long far, long[] m) {
         long factor = FixedTrigMath.RADFACTOR;
         long halfFov_deg = fovY >> 1;
         long halfFov_rad = FixedBaseMath.fixedMul(halfFov_deg, factor);
-        long sinHalf = FixedTrigMath.sin(halfFov_rad);
-        long cosHalf = FixedTrigMath.cos(halfFov_rad);
-        long tanHalf = FixedBaseMath.fixedDiv(sinHalf, cosHalf);
+        long tanHalf = FixedTrigMath.tan(halfFov_rad);
         long top = FixedBaseMath.fixedMul(near, tanHalf);
         //long bottom = -top;
         long right = FixedBaseMath.fixedMul(top, aspect);
@@ -243,7 +408,6 @@ public final class FixedMatMath {
         long productFarNear = FixedBaseMath.fixedMul(far, near);
         long twoProduct = FixedBaseMath.fixedMul(productFarNear, FixedBaseMath.FIXED2);
         long F_val = -FixedBaseMath.fixedDiv(twoProduct, fn);
-        long[] m = acquireMatrix();
         m[0]  = A;
         m[1]  = 0;
         m[2]  = B;
@@ -260,7 +424,6 @@ public final class FixedMatMath {
         m[13] = 0;
         m[14] = -FixedBaseMath.FIXED1;
         m[15] = 0;
-        return m;
     }
 
     public static void printMatrix(long[] m) {
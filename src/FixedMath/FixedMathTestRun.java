@@ -1,5 +1,10 @@
 package FixedMath;
 
+import Models.Cube;
+import Renderer.Material;
+import Renderer.RenderEffects;
+import Renderer.Scene;
+import Renderer.SceneObject;
 import javax.microedition.midlet.MIDlet;
 
 /**
@@ -9,10 +14,17 @@ public class FixedMathTestRun extends MIDlet {
 
     public void startApp() {
         FixedBaseMathExtensiveTest.main();
+        //FixedBaseMathSqrtReport.main();
+        //FixedBaseMathOverflowTest.main();
         //FixedTrigMathEdgeCasesTest.main();
+        //FixedTrigMathLutReport.main();
         //FixedVecMathTest.main();
         //FixedVecMathEdgeCasesTest.main();
         //FixedMatMathTest.main();
+        //Fixed16Benchmark.main();
+        //FixedAffineReport.main();
+        //FixedQuatMathOrientationReport.main();
+        //SceneBakeTest.main();
 
         destroyApp(false);
         notifyDestroyed();
@@ -25,6 +37,79 @@ public class FixedMathTestRun extends MIDlet {
     }
 }
 
+// ====================================
+// Checks and timing shared by the reports
+// ====================================
+final class Report {
+
+    private Report() {
+    }
+
+    /**
+     * Throws with the given description unless ok.
+     */
+    static void check(boolean ok, String what) {
+        if (!ok) {
+            throw new RuntimeException("FAILED: " + what);
+        }
+    }
+
+    static void checkAtMost(String what, long value, long limit) {
+        check(value <= limit, what + " is " + value + ", limit " + limit);
+    }
+
+    static void checkAtMost(String what, double value, double limit) {
+        check(value <= limit, what + " is " + value + ", limit " + limit);
+    }
+
+    /**
+     * Runs every case twice and prints the times of the second pass; the
+     * first pass only warms up the JIT.
+     */
+    static void time(String title, Timed[] cases) {
+        long[] ms = new long[cases.length];
+        long sink = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < cases.length; i++) {
+                long t0 = System.currentTimeMillis();
+                sink += cases[i].run();
+                ms[i] = System.currentTimeMillis() - t0;
+            }
+        }
+        System.out.println(title + " (ms)");
+        for (int i = 0; i < cases.length; i++) {
+            System.out.println("  " + pad(cases[i].name, 32) + ms[i]);
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    private static String pad(String s, int width) {
+        StringBuffer sb = new StringBuffer(s);
+        while (sb.length() < width) {
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+}
+
+/**
+ * One timed case of Report.time.
+ */
+abstract class Timed {
+
+    final String name;
+
+    Timed(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Does the timed work and returns a value depending on its results, so
+     * that the work cannot be optimized away.
+     */
+    abstract long run();
+}
+
 // ====================================
 // Extensive tests for FixedBaseMath
 // ====================================
@@ -51,6 +136,152 @@ class FixedBaseMathExtensiveTest {
     }
 }
 
+// ====================================
+// Saturating tier of FixedBaseMath
+// ====================================
+class FixedBaseMathOverflowTest {
+
+    public static void main() {
+        System.out.println("\n=== FixedBaseMath saturating tier ===\n");
+        long big = FixedBaseMath.toFixed(1e6f);
+        long huge = 1L << 60;
+        checkMul(FixedBaseMath.toFixed(1.5f), FixedBaseMath.toFixed(-2.25f));
+        checkMul(FixedBaseMath.toFixed(-3.0f), FixedBaseMath.toFixed(-7.5f));
+        checkMul(big, FixedBaseMath.toFixed(1000.0f));   // raw product above 2^63, result fits
+        checkMul(-big, FixedBaseMath.toFixed(1000.0f));
+        checkMul(big, big);                              // 1e12, fits
+        checkMul(big, big * 1000);                       // 1e15, overflows Q20
+        checkMul(-huge, huge);
+        checkDiv(FixedBaseMath.toFixed(1.0f), FixedBaseMath.toFixed(3.0f));
+        checkDiv(huge, FixedBaseMath.toFixed(1024.0f));   // a << F overflows, result fits
+        checkDiv(huge, FixedBaseMath.toFixed(0.5f));
+        checkDiv(-FixedBaseMath.FIXED1, 0);
+        Report.check(FixedBaseMath.satAdd(Long.MAX_VALUE, 1) == FixedBaseMath.MAX_FIXED, "satAdd(MAX, 1) saturates");
+        Report.check(FixedBaseMath.satSub(Long.MIN_VALUE, 1) == FixedBaseMath.MIN_FIXED, "satSub(MIN, 1) saturates");
+        Report.check(FixedBaseMath.satAdd(-5, 3) == -2, "satAdd(-5, 3) == -2");
+        System.out.println("ok");
+        System.out.println();
+    }
+
+    private static void checkMul(long a, long b) {
+        double product = (double) a * b;
+        long sat = FixedBaseMath.satMul(a, b);
+        Report.check(sat == expected(Math.floor(product / FixedBaseMath.FIXED_SCALE)),
+                "satMul(" + a + ", " + b + ") = " + sat);
+        if (fits(product)) {
+            Report.check(sat == FixedBaseMath.fixedMul(a, b),
+                    "satMul(" + a + ", " + b + ") matches fixedMul");
+        }
+    }
+
+    private static void checkDiv(long a, long b) {
+        long sat = FixedBaseMath.satDiv(a, b);
+        double quotient = (b == 0) ? a * Double.POSITIVE_INFINITY : (double) a * FixedBaseMath.FIXED_SCALE / b;
+        Report.check(sat == expected(quotient), "satDiv(" + a + ", " + b + ") = " + sat);
+    }
+
+    // The exact result when it fits, else the bound on its side
+    private static long expected(double v) {
+        if (fits(v)) {
+            return (long) v;
+        }
+        return (v < 0) ? FixedBaseMath.MIN_FIXED : FixedBaseMath.MAX_FIXED;
+    }
+
+    private static boolean fits(double v) {
+        return v < 9.2e18 && v > -9.2e18;
+    }
+}
+
+// ====================================
+// Integer sqrt and normalize against the former double-based sqrt
+// ====================================
+class FixedBaseMathSqrtReport {
+
+    private static final int CALLS = 200000;
+
+    public static void main() {
+        System.out.println("\n=== FixedBaseMath integer sqrt vs Math.sqrt ===\n");
+        long[] v = new long[3];
+        long[] n = new long[3];
+        // Every magnitude from a few LSB up to the top of the long range
+        for (int bits = 4; bits < 63; bits += 8) {
+            for (int i = 0; i < 1000; i++) {
+                long x = (1L << bits) + i * 7919L * ((1L << bits) / 8000 + 1);
+                if (x <= 0) {
+                    continue;
+                }
+                double xd = (double) x / FixedBaseMath.FIXED_SCALE;
+                double sqrtRef = Math.sqrt(xd) * FixedBaseMath.FIXED_SCALE;
+                // The root keeps 30 significant bits; small roots may still be
+                // off by one LSB
+                Report.checkAtMost("sqrt(" + x + ") error in LSB",
+                        Math.abs(FixedBaseMath.sqrt(x) - sqrtRef), Math.max(1.0, sqrtRef / (1 << 29)));
+
+                v[0] = x >> 2;
+                v[1] = -(x >> 3) + i;
+                v[2] = x >> 4;
+                FixedVecMath.normalize(v, 3, n);
+                double len = Math.sqrt((double) v[0] * v[0] + (double) v[1] * v[1] + (double) v[2] * v[2]);
+                Report.checkAtMost("normalize at 2^" + bits + " error in LSB",
+                        Math.abs(n[0] - v[0] / len * FixedBaseMath.FIXED_SCALE), 1.0);
+            }
+        }
+
+        final long step = (1L << 40) / CALLS;
+        final long[] vec = v;
+        final long[] out = n;
+        Report.time(CALLS + " calls", new Timed[]{
+            new Timed("sqrt (integer)") {
+                long run() {
+                    long sink = 0;
+                    long x = 1;
+                    for (int i = 0; i < CALLS; i++) {
+                        sink += FixedBaseMath.sqrt(x);
+                        x += step;
+                    }
+                    return sink;
+                }
+            },
+            new Timed("normalize") {
+                long run() {
+                    long sink = 0;
+                    long x = 1;
+                    for (int i = 0; i < CALLS; i++) {
+                        vec[0] = x;
+                        vec[1] = -(x >> 1);
+                        vec[2] = x >> 2;
+                        FixedVecMath.normalize(vec, 3, out);
+                        sink += out[0];
+                        x += step;
+                    }
+                    return sink;
+                }
+            },
+            new Timed("sqrt (double)") {
+                long run() {
+                    long sink = 0;
+                    long x = 1;
+                    for (int i = 0; i < CALLS; i++) {
+                        sink += sqrtDouble(x);
+                        x += step;
+                    }
+                    return sink;
+                }
+            }
+        });
+        System.out.println();
+    }
+
+    private static long sqrtDouble(long x) {
+        if (x <= 0) {
+            return 0;
+        }
+        double value = (double) x / FixedBaseMath.FIXED_SCALE;
+        return (long) (Math.sqrt(value) * FixedBaseMath.FIXED_SCALE);
+    }
+}
+
 // ====================================
 // Edge cases tests for FixedTrigMath
 // ====================================
@@ -126,6 +357,203 @@ class FixedTrigMathEdgeCasesTest {
     }
 }
 
+// ====================================
+// Accuracy and speed of the FixedTrigMath tables against the former
+// Taylor / polynomial implementations, which are kept here as reference
+// ====================================
+class FixedTrigMathLutReport {
+
+    private static final int SAMPLES = 20000;
+    private static final int CALLS = 200000;
+
+    public static void main() {
+        System.out.println("\n=== FixedTrigMath LUT vs polynomial ===\n");
+        long lutSin = 0;
+        long polySin = 0;
+        long lutCos = 0;
+        long polyCos = 0;
+        long lutAtan2 = 0;
+        long lutAcos = 0;
+        long polyAcos = 0;
+        long[] sc = new long[2];
+        for (int i = 0; i <= SAMPLES; i++) {
+            // [-4 PI, 4 PI] exercises the range reduction
+            double rad = (i - SAMPLES / 2) * 8 * Math.PI / SAMPLES;
+            long angle = (long) (rad * FixedBaseMath.FIXED_SCALE);
+            double exactRad = (double) angle / FixedBaseMath.FIXED_SCALE;
+            long sinRef = (long) (Math.sin(exactRad) * FixedBaseMath.FIXED_SCALE);
+            long cosRef = (long) (Math.cos(exactRad) * FixedBaseMath.FIXED_SCALE);
+            FixedTrigMath.sincos(angle, sc);
+            Report.check(sc[0] == FixedTrigMath.sin(angle) && sc[1] == FixedTrigMath.cos(angle),
+                    "sincos(" + angle + ") agrees with sin and cos");
+            lutSin = Math.max(lutSin, Math.abs(sc[0] - sinRef));
+            lutCos = Math.max(lutCos, Math.abs(sc[1] - cosRef));
+            polySin = Math.max(polySin, Math.abs(sinPoly(angle) - sinRef));
+            polyCos = Math.max(polyCos, Math.abs(cosPoly(angle) - cosRef));
+
+            // atan2 of a point on the unit circle should give its angle back
+            double a = (i - SAMPLES / 2) * 2 * Math.PI / (SAMPLES + 1);
+            long y = (long) (Math.sin(a) * FixedBaseMath.FIXED_SCALE);
+            long x = (long) (Math.cos(a) * FixedBaseMath.FIXED_SCALE);
+            long aRef = (long) (a * FixedBaseMath.FIXED_SCALE);
+            lutAtan2 = Math.max(lutAtan2, Math.abs(FixedTrigMath.atan2(y, x) - aRef));
+
+            double t = (double) i / SAMPLES * Math.PI;
+            long c = (long) (Math.cos(t) * FixedBaseMath.FIXED_SCALE);
+            long tRef = (long) (t * FixedBaseMath.FIXED_SCALE);
+            lutAcos = Math.max(lutAcos, Math.abs(FixedTrigMath.acos(c) - tRef));
+            polyAcos = Math.max(polyAcos, Math.abs(acosPoly(c) - tRef));
+        }
+        // Errors in Q units; the tables must stay within a few LSB and never
+        // fall behind the polynomials they replaced
+        Report.checkAtMost("sin error", lutSin, 2);
+        Report.checkAtMost("cos error", lutCos, 2);
+        Report.checkAtMost("atan2 error", lutAtan2, 4);
+        // Near |x| = 1 the acos error is dominated by the rounding of x itself
+        Report.checkAtMost("acos error", lutAcos, 1024);
+        Report.checkAtMost("sin error against the polynomial", lutSin, polySin);
+        Report.checkAtMost("cos error against the polynomial", lutCos, polyCos);
+        Report.checkAtMost("acos error against the polynomial", lutAcos, polyAcos);
+
+        final long step = FixedTrigMath.TWO_PI / 997;
+        final long xStep = FixedBaseMath.FIXED2 / CALLS;
+        final long[] out = sc;
+        Report.time(CALLS + " calls", new Timed[]{
+            new Timed("sin + cos, LUT") {
+                long run() {
+                    long sink = 0;
+                    long angle = 0;
+                    for (int i = 0; i < CALLS; i++) {
+                        sink += FixedTrigMath.sin(angle) + FixedTrigMath.cos(angle);
+                        angle += step;
+                    }
+                    return sink;
+                }
+            },
+            new Timed("sincos, LUT") {
+                long run() {
+                    long sink = 0;
+                    long angle = 0;
+                    for (int i = 0; i < CALLS; i++) {
+                        FixedTrigMath.sincos(angle, out);
+                        sink += out[0] + out[1];
+                        angle += step;
+                    }
+                    return sink;
+                }
+            },
+            new Timed("sin + cos, polynomial") {
+                long run() {
+                    long sink = 0;
+                    long angle = 0;
+                    for (int i = 0; i < CALLS; i++) {
+                        sink += sinPoly(angle) + cosPoly(angle);
+                        angle += step;
+                    }
+                    return sink;
+                }
+            },
+            new Timed("acos, LUT") {
+                long run() {
+                    long sink = 0;
+                    long x = -FixedBaseMath.FIXED1;
+                    for (int i = 0; i < CALLS; i++) {
+                        sink += FixedTrigMath.acos(x);
+                        x += xStep;
+                    }
+                    return sink;
+                }
+            },
+            new Timed("acos, polynomial") {
+                long run() {
+                    long sink = 0;
+                    long x = -FixedBaseMath.FIXED1;
+                    for (int i = 0; i < CALLS; i++) {
+                        sink += acosPoly(x);
+                        x += xStep;
+                    }
+                    return sink;
+                }
+            }
+        });
+        System.out.println();
+    }
+
+    private static final long P0 = FixedBaseMath.toFixed(1.5707288f);
+    private static final long P1 = FixedBaseMath.toFixed(-0.2121144f);
+    private static final long P2 = FixedBaseMath.toFixed(0.0742610f);
+    private static final long P3 = FixedBaseMath.toFixed(-0.0187293f);
+
+    private static long sinPoly(long angle) {
+        long a = angle % FixedTrigMath.TWO_PI;
+        if (a < 0) {
+            a += FixedTrigMath.TWO_PI;
+        }
+        if (a > FixedTrigMath.PI) {
+            a -= FixedTrigMath.TWO_PI;
+        }
+        int sign = 1;
+        if (a < 0) {
+            sign = -1;
+            a = -a;
+        }
+        if (a > FixedTrigMath.HALF_PI) {
+            a = FixedTrigMath.PI - a;
+        }
+        long x = a;
+        long x2 = FixedBaseMath.fixedMul(x, x);
+        long x3 = FixedBaseMath.fixedMul(x2, x);
+        long x5 = FixedBaseMath.fixedMul(x3, x2);
+        long x7 = FixedBaseMath.fixedMul(x5, x2);
+        long result = x - FixedBaseMath.fixedDiv(x3, FixedBaseMath.FIXED6)
+                + FixedBaseMath.fixedDiv(x5, FixedBaseMath.FIXED120)
+                - FixedBaseMath.fixedDiv(x7, FixedBaseMath.FIXED5040);
+        return sign * result;
+    }
+
+    private static long cosPoly(long angle) {
+        long a = angle % FixedTrigMath.TWO_PI;
+        if (a < 0) {
+            a += FixedTrigMath.TWO_PI;
+        }
+        if (a > FixedTrigMath.PI) {
+            a = FixedTrigMath.TWO_PI - a;
+        }
+        boolean flip = false;
+        if (a > FixedTrigMath.HALF_PI) {
+            a = FixedTrigMath.PI - a;
+            flip = true;
+        }
+        long x2 = FixedBaseMath.fixedMul(a, a);
+        long x4 = FixedBaseMath.fixedMul(x2, x2);
+        long x6 = FixedBaseMath.fixedMul(x4, x2);
+        long result = FixedBaseMath.FIXED1 - FixedBaseMath.fixedDiv(x2, FixedBaseMath.FIXED2)
+                + FixedBaseMath.fixedDiv(x4, FixedBaseMath.FIXED24)
+                - FixedBaseMath.fixedDiv(x6, FixedBaseMath.FIXED720);
+        return flip ? -result : result;
+    }
+
+    private static long acosPoly(long x) {
+        long one = FixedBaseMath.FIXED1;
+        if (x > one) {
+            x = one;
+        }
+        if (x < -one) {
+            x = -one;
+        }
+        if (x < 0) {
+            return FixedTrigMath.PI - acosPoly(-x);
+        }
+        long sqrtDelta = FixedBaseMath.sqrt(one - x);
+        long x2 = FixedBaseMath.fixedMul(x, x);
+        long x3 = FixedBaseMath.fixedMul(x2, x);
+        long poly = P0 + FixedBaseMath.fixedMul(P1, x)
+                + FixedBaseMath.fixedMul(P2, x2)
+                + FixedBaseMath.fixedMul(P3, x3);
+        return FixedBaseMath.fixedMul(sqrtDelta, poly);
+    }
+}
+
 // ====================================
 // Tests for FixedVecMath basic operations
 // ====================================
@@ -321,4 +749,378 @@ class FixedMatMathTest {
         }
         System.out.println(")");
     }
-}
\ No newline at end of file
+}
+
+// ====================================
+// Int transform path against the 64-bit batch transform
+// ====================================
+class Fixed16Benchmark {
+
+    private static final int POINTS = 1024;
+    private static final int ROUNDS = 200;
+
+    public static void main() {
+        System.out.println("\n=== Fixed16MatMath.transformOffsets vs FixedMatMath.transformPoints ===\n");
+        final long[] xs = new long[POINTS];
+        final long[] ys = new long[POINTS];
+        final long[] zs = new long[POINTS];
+        long bits = 0;
+        for (int i = 0; i < POINTS; i++) {
+            // Model-local range, a few units around the origin
+            xs[i] = FixedBaseMath.toFixed(((i * 37) % 200 - 100) / 25.0f);
+            ys[i] = FixedBaseMath.toFixed(((i * 53) % 200 - 100) / 25.0f);
+            zs[i] = FixedBaseMath.toFixed(((i * 71) % 200 - 100) / 25.0f);
+            bits |= Math.abs(xs[i]) | Math.abs(ys[i]) | Math.abs(zs[i]);
+        }
+        final int offsetShift = Fixed16MatMath.blockShift(bits, Fixed16MatMath.OFFSET_BITS);
+        final int[] dx = new int[POINTS];
+        final int[] dy = new int[POINTS];
+        final int[] dz = new int[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            dx[i] = Fixed16MatMath.scaleDown(xs[i], offsetShift);
+            dy[i] = Fixed16MatMath.scaleDown(ys[i], offsetShift);
+            dz[i] = Fixed16MatMath.scaleDown(zs[i], offsetShift);
+        }
+        long[] view = FixedMatMath.createRotationY4x4(FixedBaseMath.toFixed(0.7f));
+        long[] model = FixedMatMath.createRotationX4x4(FixedBaseMath.toFixed(-0.4f));
+        model[3] = FixedBaseMath.toFixed(3.0f);
+        model[11] = FixedBaseMath.toFixed(-40.0f);
+        final long[] modelView = FixedMatMath.multiplyAffine(view, model);
+        final long[] pers = FixedMatMath.createPerspective4x4(FixedBaseMath.toFixed(60.0f),
+                FixedBaseMath.toFixed(0.75f), FixedBaseMath.FIXED1, FixedBaseMath.toFixed(1000.0f));
+        final int[] terms = new int[9];
+        final int termShift = Fixed16MatMath.linearTerms(modelView, terms);
+        final long[] base = new long[]{modelView[3], modelView[7], modelView[11]};
+
+        long[] refX = new long[POINTS];
+        long[] refY = new long[POINTS];
+        long[] refZ = new long[POINTS];
+        long[] refW = new long[POINTS];
+        int[] refCodes = new int[POINTS];
+        final long[] dstX = new long[POINTS];
+        final long[] dstY = new long[POINTS];
+        final long[] dstZ = new long[POINTS];
+        final long[] dstW = new long[POINTS];
+        final int[] codes = new int[POINTS];
+
+        // Both paths must land within a tenth of a pixel at 320 lines and
+        // clip the same points
+        FixedMatMath.transformPoints(modelView, pers, xs, ys, zs, 0, POINTS, refX, refY, refZ, refW, refCodes);
+        Fixed16MatMath.transformOffsets(terms, termShift, base, pers, dx, dy, dz, offsetShift, 0, POINTS,
+                dstX, dstY, dstZ, dstW, codes);
+        double maxErr = 0;
+        for (int i = 0; i < POINTS; i++) {
+            maxErr = Math.max(maxErr, Math.abs((double) dstX[i] / dstW[i] - (double) refX[i] / refW[i]));
+            maxErr = Math.max(maxErr, Math.abs((double) dstY[i] / dstW[i] - (double) refY[i] / refW[i]));
+            Report.check(codes[i] == refCodes[i], "outcodes of point " + i + " match");
+        }
+        Report.checkAtMost("transformOffsets NDC error against transformPoints", maxErr, 0.1 / 160);
+
+        // Model.CLUSTER_SIZE edges share at most twice as many vertices
+        Timed[] cases = new Timed[4];
+        for (int k = 0; k < 2; k++) {
+            final int size = 32 << k;
+            cases[2 * k] = new Timed(size + "-vertex clusters, long") {
+                long run() {
+                    long sink = 0;
+                    for (int r = 0; r < ROUNDS; r++) {
+                        for (int from = 0; from < POINTS; from += size) {
+                            FixedMatMath.transformPoints(modelView, pers, xs, ys, zs, from, size,
+                                    dstX, dstY, dstZ, dstW, codes);
+                        }
+                        sink += dstW[r];
+                    }
+                    return sink;
+                }
+            };
+            cases[2 * k + 1] = new Timed(size + "-vertex clusters, int") {
+                long run() {
+                    long sink = 0;
+                    for (int r = 0; r < ROUNDS; r++) {
+                        for (int from = 0; from < POINTS; from += size) {
+                            Fixed16MatMath.transformOffsets(terms, termShift, base, pers, dx, dy, dz, offsetShift,
+                                    from, size, dstX, dstY, dstZ, dstW, codes);
+                        }
+                        sink += dstW[r];
+                    }
+                    return sink;
+                }
+            };
+        }
+        Report.time((ROUNDS * POINTS) + " points", cases);
+        System.out.println();
+    }
+}
+
+// ====================================
+// Affine model-view against full 4x4 matrices
+// ====================================
+class FixedAffineReport {
+
+    private static final int POINTS = 1024;
+    private static final int ROUNDS = 200;
+
+    public static void main() {
+        System.out.println("\n=== Affine 3x4 vs 4x4 ===\n");
+        final long[][] points = new long[POINTS][3];
+        final long[] xs = new long[POINTS];
+        final long[] ys = new long[POINTS];
+        final long[] zs = new long[POINTS];
+        for (int i = 0; i < POINTS; i++) {
+            points[i][0] = FixedBaseMath.toFixed(((i * 37) % 200 - 100) / 25.0f);
+            points[i][1] = FixedBaseMath.toFixed(((i * 53) % 200 - 100) / 25.0f);
+            points[i][2] = FixedBaseMath.toFixed(((i * 71) % 200 - 100) / 25.0f);
+            xs[i] = points[i][0];
+            ys[i] = points[i][1];
+            zs[i] = points[i][2];
+        }
+        final long[] dstX = new long[POINTS];
+        final long[] dstY = new long[POINTS];
+        final long[] dstZ = new long[POINTS];
+        final long[] dstW = new long[POINTS];
+        final int[] codes = new int[POINTS];
+        final long[] view = FixedMatMath.createRotationY4x4(FixedBaseMath.toFixed(0.7f));
+        final long[] model = FixedMatMath.createRotationX4x4(FixedBaseMath.toFixed(-0.4f));
+        model[3] = FixedBaseMath.toFixed(3.0f);
+        model[11] = FixedBaseMath.toFixed(-40.0f);
+        final long[] pers = FixedMatMath.createPerspective4x4(FixedBaseMath.toFixed(60.0f),
+                FixedBaseMath.toFixed(0.75f), FixedBaseMath.FIXED1, FixedBaseMath.toFixed(1000.0f));
+
+        // Both paths must agree up to rounding, in LSB
+        final long[] full = FixedMatMath.multiply4x4(pers, FixedMatMath.multiply4x4(view, model));
+        final long[] modelView = FixedMatMath.multiplyAffine(view, model);
+        long[] projected = FixedMatMath.projectAffine(pers, modelView);
+        final long[] cam = new long[3];
+        final long[] outA = new long[4];
+        final long[] outB = new long[4];
+        long maxErr = 0;
+        for (int k = 0; k < 16; k++) {
+            maxErr = Math.max(maxErr, Math.abs(full[k] - projected[k]));
+        }
+        Report.checkAtMost("projectAffine error against P * V * M", maxErr, 1);
+        maxErr = 0;
+        for (int i = 0; i < POINTS; i++) {
+            FixedMatMath.transformPoint(full, points[i], outA);
+            FixedMatMath.transformPointAffine(modelView, points[i], cam);
+            FixedMatMath.projectPoint(pers, cam, outB);
+            for (int k = 0; k < 4; k++) {
+                maxErr = Math.max(maxErr, Math.abs(outA[k] - outB[k]));
+            }
+        }
+        Report.checkAtMost("affine point error against the 4x4 path", maxErr, 8);
+        FixedMatMath.transformPoints(modelView, pers, xs, ys, zs, 0, POINTS, dstX, dstY, dstZ, dstW, codes);
+        for (int i = 0; i < POINTS; i++) {
+            FixedMatMath.transformPointAffine(modelView, points[i], cam);
+            FixedMatMath.projectPoint(pers, cam, outB);
+            Report.check(outB[0] == dstX[i] && outB[1] == dstY[i] && outB[2] == dstZ[i] && outB[3] == dstW[i],
+                    "transformPoints matches the per-point affine path at point " + i);
+        }
+        long[] inv = FixedMatMath.inverseRigidAffine(modelView);
+        long[] ident = FixedMatMath.multiplyAffine(inv, modelView);
+        maxErr = 0;
+        for (int k = 0; k < FixedMatMath.AFFINE_SIZE; k++) {
+            long expected = (k % 5 == 0) ? FixedBaseMath.FIXED1 : 0;
+            maxErr = Math.max(maxErr, Math.abs(ident[k] - expected));
+        }
+        Report.checkAtMost("inverseRigidAffine * m error against identity", maxErr, 8);
+
+        Report.time((ROUNDS * POINTS) + " points, " + (ROUNDS * 50) + " products", new Timed[]{
+            new Timed("point, 4x4") {
+                long run() {
+                    long sink = 0;
+                    for (int r = 0; r < ROUNDS; r++) {
+                        for (int i = 0; i < POINTS; i++) {
+                            FixedMatMath.transformPoint(full, points[i], outA);
+                            sink += outA[3];
+                        }
+                    }
+                    return sink;
+                }
+            },
+            new Timed("point, affine") {
+                long run() {
+                    long sink = 0;
+                    for (int r = 0; r < ROUNDS; r++) {
+                        for (int i = 0; i < POINTS; i++) {
+                            FixedMatMath.transformPointAffine(modelView, points[i], cam);
+                            FixedMatMath.projectPoint(pers, cam, outB);
+                            sink += outB[3];
+                        }
+                    }
+                    return sink;
+                }
+            },
+            new Timed("points, batched with outcodes") {
+                long run() {
+                    long sink = 0;
+                    for (int r = 0; r < ROUNDS; r++) {
+                        FixedMatMath.transformPoints(modelView, pers, xs, ys, zs, 0, POINTS,
+                                dstX, dstY, dstZ, dstW, codes);
+                        sink += dstW[r];
+                    }
+                    return sink;
+                }
+            },
+            new Timed("P * V * M, 4x4") {
+                long run() {
+                    long sink = 0;
+                    for (int r = 0; r < ROUNDS * 50; r++) {
+                        long[] m = FixedMatMath.multiply4x4(view, model);
+                        long[] p = FixedMatMath.multiply4x4(pers, m);
+                        sink += p[0];
+                        FixedMatMath.releaseMatrix(p);
+                        FixedMatMath.releaseMatrix(m);
+                    }
+                    return sink;
+                }
+            },
+            new Timed("P * V * M, affine") {
+                long run() {
+                    long sink = 0;
+                    for (int r = 0; r < ROUNDS * 50; r++) {
+                        long[] m = FixedMatMath.multiplyAffine(view, model);
+                        long[] p = FixedMatMath.projectAffine(pers, m);
+                        sink += p[0];
+                        FixedMatMath.releaseMatrix(p);
+                        FixedMatMath.releaseAffine(m);
+                    }
+                    return sink;
+                }
+            }
+        });
+        System.out.println();
+    }
+}
+
+// ====================================
+// Quaternion orientation against Euler matrices
+// ====================================
+class FixedQuatMathOrientationReport {
+
+    private static final int ROUNDS = 20000;
+
+    public static void main() {
+        System.out.println("\n=== Quaternion orientation ===\n");
+        final long rx = FixedBaseMath.toFixed(0.2f);
+        final long ry = FixedBaseMath.toFixed(0.8f);
+        final long rz = FixedBaseMath.toFixed(-0.8f);
+        final long scale = FixedBaseMath.toFixed(200.0f);
+
+        long[] euler = eulerMatrix(rx, ry, rz, scale);
+        final long[] q = new long[4];
+        final long[] m = new long[16];
+        FixedQuatMath.fromEuler(rx, ry, rz, q);
+        FixedQuatMath.toRotationMatrix(q, scale, m);
+        long maxErr = 0;
+        for (int k = 0; k < 16; k++) {
+            maxErr = Math.max(maxErr, Math.abs(euler[k] - m[k]));
+        }
+        // At scale 200, 2^-8 is about 2e-5 of the largest term
+        Report.checkAtMost("fromEuler + scaled toRotationMatrix error against T*Rz*Ry*Rx*S",
+                maxErr, FixedBaseMath.FIXED1 >> 8);
+
+        // 1000 small steps of 2 pi / 1000 * (0.5, 1, 0): 7.025 rad about
+        // (0.447, 0.894, 0) in total
+        long step = FixedBaseMath.toFixed((float) (2 * Math.PI / 1000));
+        long[] spin = new long[]{0, 0, 0, FixedBaseMath.FIXED1};
+        for (int i = 0; i < 1000; i++) {
+            FixedQuatMath.integrate(spin, step >> 1, step, 0);
+        }
+        long n2 = (spin[0] * spin[0] + spin[1] * spin[1] + spin[2] * spin[2] + spin[3] * spin[3])
+                >> FixedBaseMath.FIXED_SHIFT;
+        Report.checkAtMost("|q|^2 - 1 after 1000 integrate steps, in LSB", Math.abs(n2 - FixedBaseMath.FIXED1), 16);
+        float[] expected = new float[]{-0.162f, -0.324f, 0, -0.932f};
+        for (int k = 0; k < 4; k++) {
+            Report.checkAtMost("q[" + k + "] error after 1000 integrate steps",
+                    Math.abs(FixedBaseMath.toFloat(spin[k]) - expected[k]), 0.001);
+        }
+
+        Report.time(ROUNDS + " orientations", new Timed[]{
+            new Timed("Euler, 5 matrix products") {
+                long run() {
+                    long sink = 0;
+                    for (int r = 0; r < ROUNDS; r++) {
+                        long[] e = eulerMatrix(rx + r, ry, rz, scale);
+                        sink += e[0];
+                        FixedMatMath.releaseMatrix(e);
+                    }
+                    return sink;
+                }
+            },
+            new Timed("integrate + toRotationMatrix") {
+                long run() {
+                    long sink = 0;
+                    for (int r = 0; r < ROUNDS; r++) {
+                        FixedQuatMath.integrate(q, 16, 32, 8);
+                        FixedQuatMath.toRotationMatrix(q, scale, m);
+                        sink += m[0];
+                    }
+                    return sink;
+                }
+            }
+        });
+        System.out.println();
+    }
+
+    // The matrix chain SceneObject used to build per frame, translation left out
+    private static long[] eulerMatrix(long rx, long ry, long rz, long scale) {
+        long[] local = FixedMatMath.createIdentity4x4();
+        long[][] chain = new long[][]{
+            FixedMatMath.createRotationZ4x4(rz),
+            FixedMatMath.createRotationY4x4(ry),
+            FixedMatMath.createRotationX4x4(rx),
+            FixedMatMath.createScale4x4(scale, scale, scale)
+        };
+        for (int i = 0; i < chain.length; i++) {
+            long[] temp = FixedMatMath.multiply4x4(local, chain[i]);
+            FixedMatMath.releaseMatrix(local);
+            FixedMatMath.releaseMatrix(chain[i]);
+            local = temp;
+        }
+        return local;
+    }
+}
+
+// ====================================
+// Static objects with equal render state bake into one batch
+// ====================================
+class SceneBakeTest {
+
+    public static void main() {
+        System.out.println("\n=== Scene.bakeStaticObjects batching ===\n");
+        Scene scene = new Scene(8, FixedBaseMath.toFixed(60.0f), FixedBaseMath.FIXED1,
+                FixedBaseMath.FIXED1, FixedBaseMath.toFixed(1000.0f));
+        Material shared = cubeMaterial(0xFFAAAAFF);
+        scene.addObject(cube(shared, true, 0));
+        scene.addObject(cube(shared, true, 10));
+        // A separate instance with the same settings still merges
+        scene.addObject(cube(cubeMaterial(0xFFAAAAFF), true, 20));
+        scene.addObject(cube(cubeMaterial(0xFF2222FF), true, 30));
+        scene.addObject(cube(shared, false, 40));
+        Report.check(scene.getObjectCount() == 5, "5 objects before baking");
+        scene.bakeStaticObjects();
+        int after = scene.getObjectCount();
+        // Three alike static cubes, the odd-colored one, the dynamic one
+        Report.check(after == 3, "3 objects after baking, got " + after);
+        System.out.println("ok");
+        System.out.println();
+    }
+
+    private static Material cubeMaterial(int color) {
+        return new Material(color, color,
+                FixedBaseMath.FIXED1, FixedBaseMath.toFixed(1000.0f),
+                FixedBaseMath.FIXED1, FixedBaseMath.toFixed(100.0f),
+                RenderEffects.TYPE_EDGES, 1, RenderEffects.SHAPE_P, 0);
+    }
+
+    private static SceneObject cube(Material material, boolean isStatic, int x) {
+        SceneObject obj = new SceneObject(Cube.create(1));
+        obj.tx = FixedBaseMath.fromInt(x);
+        obj.tz = FixedBaseMath.fromInt(-50);
+        obj.scale = FixedBaseMath.FIXED1;
+        obj.updateBoundingSphereRadiusScaled();
+        obj.material = material;
+        obj.isStatic = isStatic;
+        return obj;
+    }
+}
@@ -28,24 +28,27 @@ public final class FixedQuatMath {
     }
 
     public static long[] fromAxisAngle(long[] axis, long angle) {
-        long halfAngle = angle >> 1;
-        long sinHalf = FixedTrigMath.sin(halfAngle);
-        long cosHalf = FixedTrigMath.cos(halfAngle);
-        long[] normAxis = FixedVecMath.normalize(axis);
-        long x = FixedBaseMath.fixedMul(normAxis[0], sinHalf);
-        long y = FixedBaseMath.fixedMul(normAxis[1], sinHalf);
-        long z = FixedBaseMath.fixedMul(normAxis[2], sinHalf);
-        long w = cosHalf;
         long[] q = acquireQuaternion();
-        q[0] = x;
-        q[1] = y;
-        q[2] = z;
-        q[3] = w;
+        FixedTrigMath.sincos(angle >> 1, q, 2); // q[2] = sin(angle / 2), q[3] = cos(angle / 2)
+        long sinHalf = q[2];
+        long[] normAxis = FixedVecMath.normalize(axis);
+        q[0] = FixedBaseMath.fixedMul(normAxis[0], sinHalf);
+        q[1] = FixedBaseMath.fixedMul(normAxis[1], sinHalf);
+        q[2] = FixedBaseMath.fixedMul(normAxis[2], sinHalf);
         FixedVecMath.releaseVector(normAxis);
         return q;
     }
 
     public static long[] multiply(long[] q1, long[] q2) {
+        long[] result = acquireQuaternion();
+        multiply(q1, q2, result);
+        return result;
+    }
+
+    /**
+     * q1 * q2 into out, which may be q1 or q2.
+     */
+    public static void multiply(long[] q1, long[] q2, long[] out) {
         long x1 = q1[0], y1 = q1[1], z1 = q1[2], w1 = q1[3];
         long x2 = q2[0], y2 = q2[1], z2 = q2[2], w2 = q2[3];
 
@@ -81,37 +84,30 @@ public final class FixedQuatMath {
                         FixedBaseMath.fixedMul(y1, y2),
                         FixedBaseMath.fixedMul(z1, z2)));
 
-        long[] result = acquireQuaternion();
-        result[0] = x;
-        result[1] = y;
-        result[2] = z;
-        result[3] = w;
-        return result;
+        out[0] = x;
+        out[1] = y;
+        out[2] = z;
+        out[3] = w;
     }
 
     public static long[] normalize(long[] q) {
-        long sumSq = q[0] * q[0] + q[1] * q[1] + q[2] * q[2] + q[3] * q[3];
-        long mag = FixedBaseMath.sqrt(sumSq >> FixedBaseMath.FIXED_SHIFT);
-        if (mag == 0) {
-            long[] identity = acquireQuaternion();
-            identity[0] = 0;
-            identity[1] = 0;
-            identity[2] = 0;
-            identity[3] = FixedBaseMath.FIXED1;
-            return identity;
-        }
-        long normX = FixedBaseMath.fixedDiv(q[0], mag);
-        long normY = FixedBaseMath.fixedDiv(q[1], mag);
-        long normZ = FixedBaseMath.fixedDiv(q[2], mag);
-        long normW = FixedBaseMath.fixedDiv(q[3], mag);
         long[] result = acquireQuaternion();
-        result[0] = normX;
-        result[1] = normY;
-        result[2] = normZ;
-        result[3] = normW;
+        normalize(q, result);
         return result;
     }
 
+    /**
+     * Unit quaternion of q into out, which may be q. A zero q gives identity.
+     */
+    public static void normalize(long[] q, long[] out) {
+        if (!FixedVecMath.normalize(q, 4, out)) {
+            out[0] = 0;
+            out[1] = 0;
+            out[2] = 0;
+            out[3] = FixedBaseMath.FIXED1;
+        }
+    }
+
     public static long[] conjugate(long[] q) {
         long[] result = acquireQuaternion();
         result[0] = -q[0];
@@ -122,6 +118,24 @@ public final class FixedQuatMath {
     }
 
     public static long[] toRotationMatrix(long[] q) {
+        long[] m = FixedMatMath.acquireMatrix();
+        toRotationMatrix(q, FixedBaseMath.FIXED1, m);
+        return m;
+    }
+
+    /**
+     * Rotation matrix of unit quaternion q into the 4x4 m.
+     */
+    public static void toRotationMatrix(long[] q, long[] m) {
+        toRotationMatrix(q, FixedBaseMath.FIXED1, m);
+    }
+
+    /**
+     * Rotation matrix of unit quaternion q, times a uniform scale, into the
+     * 4x4 m. The scale rides on the constants the matrix is built from, so
+     * it costs no extra multiplies.
+     */
+    public static void toRotationMatrix(long[] q, long scale, long[] m) {
         long x = q[0], y = q[1], z = q[2], w = q[3];
         long xx = FixedBaseMath.fixedMul(x, x);
         long yy = FixedBaseMath.fixedMul(y, y);
@@ -132,10 +146,9 @@ public final class FixedQuatMath {
         long wx = FixedBaseMath.fixedMul(w, x);
         long wy = FixedBaseMath.fixedMul(w, y);
         long wz = FixedBaseMath.fixedMul(w, z);
-        long two = FixedBaseMath.FIXED2;
-        long one = FixedBaseMath.FIXED1;
+        long two = scale << 1;
+        long one = scale;
 
-        long[] m = FixedMatMath.acquireMatrix();
         m[0]  = one - FixedBaseMath.fixedMul(two, FixedBaseMath.fixedAdd(yy, zz));
         m[1]  = FixedBaseMath.fixedMul(two, FixedBaseMath.fixedSub(xy, wz));
         m[2]  = FixedBaseMath.fixedMul(two, FixedBaseMath.fixedAdd(xz, wy));
@@ -151,8 +164,54 @@ public final class FixedQuatMath {
         m[12] = 0;
         m[13] = 0;
         m[14] = 0;
-        m[15] = one;
-        return m;
+        m[15] = FixedBaseMath.FIXED1;
+    }
+
+    /**
+     * Sets out to the rotation Rz * Ry * Rx, X applied first.
+     */
+    public static void fromEuler(long rx, long ry, long rz, long[] out) {
+        long sx = FixedTrigMath.sin(rx >> 1), cx = FixedTrigMath.cos(rx >> 1);
+        long sy = FixedTrigMath.sin(ry >> 1), cy = FixedTrigMath.cos(ry >> 1);
+        long sz = FixedTrigMath.sin(rz >> 1), cz = FixedTrigMath.cos(rz >> 1);
+        long cycz = FixedBaseMath.fixedMul(cy, cz);
+        long sysz = FixedBaseMath.fixedMul(sy, sz);
+        long sycz = FixedBaseMath.fixedMul(sy, cz);
+        long cysz = FixedBaseMath.fixedMul(cy, sz);
+        out[0] = FixedBaseMath.fixedMul(sx, cycz) - FixedBaseMath.fixedMul(cx, sysz);
+        out[1] = FixedBaseMath.fixedMul(cx, sycz) + FixedBaseMath.fixedMul(sx, cysz);
+        out[2] = FixedBaseMath.fixedMul(cx, cysz) - FixedBaseMath.fixedMul(sx, sycz);
+        out[3] = FixedBaseMath.fixedMul(cx, cycz) + FixedBaseMath.fixedMul(sx, sysz);
+    }
+
+    /**
+     * q = q * (wx / 2, wy / 2, wz / 2, 1) followed by renormalize: a body-frame
+     * rotation by the small angles (wx, wy, wz) in radians, accurate to
+     * first order. Meant for per-frame angular velocity steps well below a
+     * tenth of a radian.
+     */
+    public static void integrate(long[] q, long wx, long wy, long wz) {
+        long x = q[0], y = q[1], z = q[2], w = q[3];
+        long a = wx >> 1, b = wy >> 1, c = wz >> 1;
+        q[0] = x + ((w * a + y * c - z * b) >> FixedBaseMath.FIXED_SHIFT);
+        q[1] = y + ((w * b + z * a - x * c) >> FixedBaseMath.FIXED_SHIFT);
+        q[2] = z + ((w * c + x * b - y * a) >> FixedBaseMath.FIXED_SHIFT);
+        q[3] = w - ((x * a + y * b + z * c) >> FixedBaseMath.FIXED_SHIFT);
+        renormalize(q);
+    }
+
+    /**
+     * Pulls a nearly unit q back to unit length without a square root, by
+     * one Newton step: q *= (3 - |q|^2) / 2. Drift from repeated small
+     * updates stays second order, so this is all they need.
+     */
+    public static void renormalize(long[] q) {
+        long n2 = (q[0] * q[0] + q[1] * q[1] + q[2] * q[2] + q[3] * q[3]) >> FixedBaseMath.FIXED_SHIFT;
+        long s = (3 * FixedBaseMath.FIXED1 - n2) >> 1;
+        q[0] = (q[0] * s) >> FixedBaseMath.FIXED_SHIFT;
+        q[1] = (q[1] * s) >> FixedBaseMath.FIXED_SHIFT;
+        q[2] = (q[2] * s) >> FixedBaseMath.FIXED_SHIFT;
+        q[3] = (q[3] * s) >> FixedBaseMath.FIXED_SHIFT;
     }
 
     private FixedQuatMath() {
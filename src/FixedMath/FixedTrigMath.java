@@ -10,78 +10,104 @@ public final class FixedTrigMath {
     public static final long RADFACTOR = FixedBaseMath.fixedDiv(PI, DEG180);
 
 
-    private static final long P0 = FixedBaseMath.toFixed(1.5707288f);
-    private static final long P1 = FixedBaseMath.toFixed(-0.2121144f);
-    private static final long P2 = FixedBaseMath.toFixed(0.0742610f);
-    private static final long P3 = FixedBaseMath.toFixed(-0.0187293f);
+    // Quarter-wave sine table with linear interpolation. The step error is
+    // about (PI / 2 / N)^2 / 8, so N = 2^(FIXED_SHIFT / 2) keeps it below one
+    // unit in the last place of the Q format.
+    public static final int SIN_TABLE_BITS = (FixedBaseMath.FIXED_SHIFT + 1) >> 1;
+    public static final int SIN_TABLE_SIZE = 1 << SIN_TABLE_BITS;
+    private static final int PHASE_MASK = (SIN_TABLE_SIZE << 2) - 1;
+    private static final long FRACTION_MASK = FixedBaseMath.FIXED_SCALE - 1;
 
-    public static long sin(long angle) {
-        long a = angle % TWO_PI;
-        if (a < 0) {
-            a += TWO_PI;
-        }
-        if (a > PI) {
-            a -= TWO_PI;
-        }
-        int sign = 1;
-        if (a < 0) {
-            sign = -1;
-            a = -a;
+    // Radians to table steps (a quarter turn is SIN_TABLE_SIZE steps), in Q
+    private static final long PHASE_SCALE =
+            (long) (SIN_TABLE_SIZE * 2 / Math.PI * FixedBaseMath.FIXED_SCALE + 0.5);
+    // Larger angles would overflow angle * PHASE_SCALE and are reduced first
+    private static final long MAX_DIRECT_ANGLE = Long.MAX_VALUE / PHASE_SCALE;
+
+    // atan(t) for t in [0, 1], same resolution as the sine table
+    public static final int ATAN_TABLE_BITS = SIN_TABLE_BITS;
+    public static final int ATAN_TABLE_SIZE = 1 << ATAN_TABLE_BITS;
+    private static final int ATAN_FRACTION_BITS = FixedBaseMath.FIXED_SHIFT - ATAN_TABLE_BITS;
+
+    private static final int[] SIN_TABLE = new int[SIN_TABLE_SIZE + 1];
+    private static final int[] ATAN_TABLE = new int[ATAN_TABLE_SIZE + 1];
+
+    static {
+        double scale = FixedBaseMath.FIXED_SCALE;
+        for (int i = 0; i <= SIN_TABLE_SIZE; i++) {
+            SIN_TABLE[i] = (int) (Math.sin(i * Math.PI / 2 / SIN_TABLE_SIZE) * scale + 0.5);
         }
-        if (a > HALF_PI) {
-            a = PI - a;
+        // CLDC has no Math.atan: invert tan with Newton steps,
+        // theta -= (tan(theta) - t) / (1 + tan(theta)^2)
+        for (int i = 0; i <= ATAN_TABLE_SIZE; i++) {
+            double t = (double) i / ATAN_TABLE_SIZE;
+            double theta = t * Math.PI / 4;
+            for (int k = 0; k < 6; k++) {
+                double tanTheta = Math.tan(theta);
+                theta -= (tanTheta - t) / (1 + tanTheta * tanTheta);
+            }
+            ATAN_TABLE[i] = (int) (theta * scale + 0.5);
         }
-        long x = a;
-        long x2 = FixedBaseMath.fixedMul(x, x);
-        long x3 = FixedBaseMath.fixedMul(x2, x);
-        long x5 = FixedBaseMath.fixedMul(x3, x2);
-        long x7 = FixedBaseMath.fixedMul(x5, x2);
-        long term1 = x;
-        long term2 = FixedBaseMath.fixedDiv(x3, FixedBaseMath.FIXED6);
-        long term3 = FixedBaseMath.fixedDiv(x5, FixedBaseMath.FIXED120);
-        long term4 = FixedBaseMath.fixedDiv(x7, FixedBaseMath.FIXED5040);
-        long result = term1 - term2 + term3 - term4;
-        return sign * result;
+    }
+
+    public static long sin(long angle) {
+        return sinPhase(toPhase(angle));
     }
 
     public static long cos(long angle) {
-        long a = angle % TWO_PI;
-        if (a < 0) {
-            a += TWO_PI;
-        }
-        if (a > PI) {
-            a = TWO_PI - a;
-        }
-        boolean flip = false;
-        if (a > HALF_PI) {
-            a = PI - a;
-            flip = true;
-        }
-        long x = a;
-        long x2 = FixedBaseMath.fixedMul(x, x);
-        long x4 = FixedBaseMath.fixedMul(x2, x2);
-        long x6 = FixedBaseMath.fixedMul(x4, x2);
-        long one = FixedBaseMath.FIXED1;
-        long term1 = one;
-        long term2 = FixedBaseMath.fixedDiv(x2, FixedBaseMath.FIXED2);
-        long term3 = FixedBaseMath.fixedDiv(x4, FixedBaseMath.FIXED24);
-        long term4 = FixedBaseMath.fixedDiv(x6, FixedBaseMath.FIXED720);
-        long result = term1 - term2 + term3 - term4;
-        if (flip) {
-            result = -result;
-        }
-        return result;
+        return sinPhase(toPhase(angle) + ((long) SIN_TABLE_SIZE << FixedBaseMath.FIXED_SHIFT));
+    }
+
+    /**
+     * Stores sin(angle) at out[offset] and cos(angle) at out[offset + 1],
+     * reducing the angle only once.
+     */
+    public static void sincos(long angle, long[] out, int offset) {
+        long phase = toPhase(angle);
+        out[offset] = sinPhase(phase);
+        out[offset + 1] = sinPhase(phase + ((long) SIN_TABLE_SIZE << FixedBaseMath.FIXED_SHIFT));
+    }
+
+    public static void sincos(long angle, long[] out) {
+        sincos(angle, out, 0);
     }
 
     public static long tan(long angle) {
-        long sinVal = sin(angle);
-        long cosVal = cos(angle);
+        long phase = toPhase(angle);
+        long sinVal = sinPhase(phase);
+        long cosVal = sinPhase(phase + ((long) SIN_TABLE_SIZE << FixedBaseMath.FIXED_SHIFT));
         if (cosVal == 0) {
             return (sinVal >= 0) ? Long.MAX_VALUE : Long.MIN_VALUE;
         }
         return FixedBaseMath.fixedDiv(sinVal, cosVal);
     }
 
+    /**
+     * Angle of (x, y) in (-PI, PI], 0 for the origin.
+     */
+    public static long atan2(long y, long x) {
+        if (x == 0 && y == 0) {
+            return 0;
+        }
+        long ax = (x < 0) ? -x : x;
+        long ay = (y < 0) ? -y : y;
+        // Keep the ratio's fixedDiv shift inside 64 bits
+        while (((ax | ay) >> (62 - FixedBaseMath.FIXED_SHIFT)) != 0) {
+            ax >>= 1;
+            ay >>= 1;
+        }
+        long a;
+        if (ay <= ax) {
+            a = atanUnit(FixedBaseMath.fixedDiv(ay, ax));
+        } else {
+            a = HALF_PI - atanUnit(FixedBaseMath.fixedDiv(ax, ay));
+        }
+        if (x < 0) {
+            a = PI - a;
+        }
+        return (y < 0) ? -a : a;
+    }
+
     public static long acos(long x) {
         long one = FixedBaseMath.FIXED1;
         if (x > one) {
@@ -90,17 +116,51 @@ public final class FixedTrigMath {
         if (x < -one) {
             x = -one;
         }
-        if (x < 0) {
-            return PI - acos(-x);
+        // acos(x) = atan2(sqrt(1 - x^2), x), with 1 - x^2 factored to keep
+        // precision near |x| = 1
+        long s = FixedBaseMath.sqrt(FixedBaseMath.fixedMul(one - x, one + x));
+        return atan2(s, x);
+    }
+
+    private static long toPhase(long angle) {
+        if (angle > MAX_DIRECT_ANGLE || angle < -MAX_DIRECT_ANGLE) {
+            angle %= TWO_PI;
+        }
+        return (angle * PHASE_SCALE) >> FixedBaseMath.FIXED_SHIFT;
+    }
+
+    /**
+     * Sine at a phase given in table steps with FIXED_SHIFT fraction bits.
+     */
+    private static long sinPhase(long phase) {
+        int step = (int) (phase >> FixedBaseMath.FIXED_SHIFT) & PHASE_MASK;
+        long frac = phase & FRACTION_MASK;
+        int quadrant = step >> SIN_TABLE_BITS;
+        int i = step & (SIN_TABLE_SIZE - 1);
+        long v;
+        if ((quadrant & 1) == 0) {
+            long a = SIN_TABLE[i];
+            v = a + (((SIN_TABLE[i + 1] - a) * frac) >> FixedBaseMath.FIXED_SHIFT);
+        } else {
+            // Second and fourth quadrants read the table backwards
+            int j = SIN_TABLE_SIZE - i;
+            long a = SIN_TABLE[j];
+            v = a + (((SIN_TABLE[j - 1] - a) * frac) >> FixedBaseMath.FIXED_SHIFT);
+        }
+        return (quadrant >= 2) ? -v : v;
+    }
+
+    /**
+     * atan(t) for t in [0, FIXED1].
+     */
+    private static long atanUnit(long t) {
+        int i = (int) (t >> ATAN_FRACTION_BITS);
+        if (i >= ATAN_TABLE_SIZE) {
+            return ATAN_TABLE[ATAN_TABLE_SIZE];
         }
-        long delta = one - x;
-        long sqrtDelta = FixedBaseMath.sqrt(delta);
-        long x2 = FixedBaseMath.fixedMul(x, x);
-        long x3 = FixedBaseMath.fixedMul(x2, x);
-        long poly = P0 + FixedBaseMath.fixedMul(P1, x) +
-                    FixedBaseMath.fixedMul(P2, x2) +
-                    FixedBaseMath.fixedMul(P3, x3);
-        return FixedBaseMath.fixedMul(sqrtDelta, poly);
+        long frac = t & ((1L << ATAN_FRACTION_BITS) - 1);
+        long a = ATAN_TABLE[i];
+        return a + (((ATAN_TABLE[i + 1] - a) * frac) >> ATAN_FRACTION_BITS);
     }
 
     public static float degreesToRadians(float degrees) {
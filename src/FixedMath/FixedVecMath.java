@@ -112,11 +112,46 @@ public final class FixedVecMath {
     }
 
     public static long[] normalize(long[] v) {
-        long mag = fixedMagnitude(v);
-        if (mag == 0) {
-            return acquireVector(v.length);
+        long[] result = acquireVector(v.length);
+        if (!normalize(v, v.length, result)) {
+            for (int i = 0; i < v.length; i++) {
+                result[i] = 0;
+            }
         }
-        return fixedDiv(v, mag);
+        return result;
+    }
+
+    /**
+     * Writes the first n components of src scaled to unit length into dst,
+     * using one isqrt, one divide and n multiplies. n must be at most 4.
+     * Returns false, leaving dst untouched, for a zero vector.
+     */
+    static boolean normalize(long[] src, int n, long[] dst) {
+        long bits = 0;
+        for (int i = 0; i < n; i++) {
+            bits |= (src[i] < 0) ? -src[i] : src[i];
+        }
+        if (bits == 0) {
+            return false;
+        }
+        // Direction is scale invariant: bring the largest component to 30
+        // bits so the sum of squares fills, but cannot overflow, a long
+        int shift = 29 - FixedBaseMath.highestBit(bits);
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            long c = (shift >= 0) ? src[i] << shift : src[i] >> -shift;
+            sum += c * c;
+        }
+        // inv = 2^62 / |c| and every component is at most |c|, so c * inv
+        // stays within 2^62
+        long inv = (1L << 62) / FixedBaseMath.isqrt(sum);
+        int down = 62 - FixedBaseMath.FIXED_SHIFT;
+        long half = 1L << (down - 1);
+        for (int i = 0; i < n; i++) {
+            long c = (shift >= 0) ? src[i] << shift : src[i] >> -shift;
+            dst[i] = (c * inv + half) >> down;
+        }
+        return true;
     }
 
     public static long angleBetweenVectors(long[] v1, long[] v2) {
@@ -17,7 +17,7 @@ public class Cube {
      * are in Q24.8 fixed-point format, covering the region [-0.5,+0.5]^3.
      *
      * @param subdiv number of subdivisions per edge (>=1).
-     * @return a Model with vertices, edges, and boundingSphereRadius = 1.0 in Q24.8
+     * @return a Model with vertices, edges and fitted bounds (radius ~0.87)
      */
     public static Model create(int subdiv) {
         if (subdiv < 1) {
@@ -95,7 +95,6 @@ public class Cube {
             edges[i] = (int[]) edgeList.elementAt(i);
         }
 
-        long boundingSphere = FixedBaseMath.FIXED1;
-        return new Model(vertices, edges, boundingSphere);
+        return new Model(vertices, edges);
     }
 }
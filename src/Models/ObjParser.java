@@ -12,7 +12,6 @@ public class ObjParser {
     public static Model create(String resourcePath) throws IOException {
         Vector vertices = new Vector(); // will store long[] of size 3
         Vector edges = new Vector();    // will store int[] of size 2
-        long boundingSphereRadius = 0;
 
         // Open the resource file as an InputStream
         InputStream is = ObjParser.class.getResourceAsStream(resourcePath);
@@ -42,12 +41,6 @@ public class ObjParser {
                     
                     // Add vertex as an array of three longs
                     vertices.addElement(new long[] { x, y, z });
-                    
-                    // Update bounding sphere radius
-                    long distance = FixedBaseMath.fixedHypot3D(x, y, z);
-                    if (distance > boundingSphereRadius) {
-                        boundingSphereRadius = distance;
-                    }
                 } else if (type.equals("l") && line.substring(secondSpace + 1).indexOf(' ') == -1) {
                     // Only consider lines ("l") with exactly two vertex indices
                     int v1 = Integer.parseInt(line.substring(firstSpace + 1, secondSpace)) - 1; // adjust for 0-based index
@@ -76,7 +69,7 @@ public class ObjParser {
             edgesArray[i] = (int[]) edges.elementAt(i);
         }
         
-        return new Model(verticesArray, edgesArray, boundingSphereRadius);
+        return new Model(verticesArray, edgesArray);
     }
 
     /**
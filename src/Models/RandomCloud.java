@@ -31,7 +31,6 @@ public class RandomCloud {
             }
         }
         int[][] edges = new int[0][0];
-        long boundingSphere = FixedBaseMath.FIXED1;
-        return new Model(vertices, edges, boundingSphere);
+        return new Model(vertices, edges);
     }
 }
@@ -43,7 +43,6 @@ public class Ring {
             edges[i] = new int[]{i, next};
         }
         
-        long boundingSphere = FixedBaseMath.toFixed(radius);
-        return new Model(vertices, edges, boundingSphere);
+        return new Model(vertices, edges);
     }
 }
@@ -11,7 +11,7 @@ public class Sphere {
     /**
      * Creates a UV-sphere model with the given number of horizontal
      * segments (numSegments) and vertical rings (numRings).
-     * The resulting Model has its boundingSphereRadius set to 1.0 in Q24.8.
+     * The resulting Model fits its bounds to the generated vertices.
      *
      * @param numSegments Number of horizontal segments (longitude)
      * @param numRings    Number of vertical rings (latitude)
@@ -20,8 +20,7 @@ public class Sphere {
     public static Model create(int numSegments, int numRings) {
         long[][] vertices = generateVertices(numSegments, numRings);
         int[][] edges = generateEdges(numSegments, numRings);
-        long boundingSphere = FixedBaseMath.FIXED1;
-        return new Model(vertices, edges, boundingSphere);
+        return new Model(vertices, edges);
     }
 
     /**
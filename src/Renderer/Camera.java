@@ -1,44 +1,92 @@
 package Renderer;
 
-import FixedMath.FixedMatMath;
 import FixedMath.FixedBaseMath;
 import FixedMath.FixedQuatMath;
-
+import FixedMath.FixedTrigMath;
+
+/**
+ * Position and orientation of the viewer. All state lives in arrays
+ * allocated once here; the rotation and basis vectors are rebuilt lazily,
+ * and only after the orientation has changed. The renderer works relative
+ * to the camera position, so no combined view matrix is kept.
+ * Arrays returned by the getters belong to the camera and must not be
+ * released or modified.
+ */
 public class Camera {
 
-    private long[] viewMatrix; // The view matrix (inverse of world transform)
-    private long[] position;   // Position in world space (Q24.8)
-    // Orientation as a quaternion [x, y, z, w] in Q24.8
-    private long[] orientation;
-    private long[] rotMatrix;
-    private long[] rotMatrixT;
-    private long[] trans;
+    private final long[] position = new long[3]; // world space, Q
+    // Orientation as a unit quaternion [x, y, z, w] in Q
+    private final long[] orientation = new long[]{0, 0, 0, FixedBaseMath.FIXED1};
+    private final long[] delta = new long[4]; // incremental rotation scratch
+
+    private final long[] rotation = new long[16];     // R, camera to world
+    private final long[] viewRotation = new long[16]; // R^T, for camera-relative positions
+    // World-space camera axes, the columns of R (forward is -Z)
+    private final long[] right = new long[3];
+    private final long[] up = new long[3];
+    private final long[] forward = new long[3];
+
+    private boolean rotationDirty = true;
+    private int version;
+
+    /**
+     * Changes every time the position or orientation does, so dependent
+     * caches (Scene's per-object cull state) can tell whether they are stale.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * The view rotation R^T without the translation. Positions are made
+     * camera-relative by subtracting getPosition() first, in world units,
+     * which keeps large coordinates out of the matrix products.
+     */
+    public long[] getRotationViewMatrix() {
+        updateRotation();
+        return viewRotation;
+    }
+
+    // Returns the current rotation matrix derived from orientation.
+    public long[] getRotationMatrix() {
+        updateRotation();
+        return rotation;
+    }
+
+    public long[] getRight() {
+        updateRotation();
+        return right;
+    }
 
-    public Camera() {
-        viewMatrix = FixedMatMath.createIdentity4x4();
-        position = new long[]{0, 0, 0};
-        // Persistent orientation starts as identity.
-        orientation = new long[]{0, 0, 0, FixedBaseMath.FIXED1};
+    public long[] getUp() {
+        updateRotation();
+        return up;
     }
 
-    // Returns the view matrix used for rendering.
-    public long[] getViewMatrix() {
-        updateViewMatrix();
-        return viewMatrix;
+    public long[] getForward() {
+        updateRotation();
+        return forward;
     }
 
-    // Computes the view matrix as R^T * T(-position), where R is derived from orientation.
-    private void updateViewMatrix() {
-        if (viewMatrix != null) {
-            FixedMatMath.releaseMatrix(viewMatrix);
+    private void updateRotation() {
+        if (!rotationDirty) {
+            return;
         }
-        rotMatrix = FixedQuatMath.toRotationMatrix(orientation);
-        rotMatrixT = FixedMatMath.transpose(rotMatrix);
-        trans = FixedMatMath.createTranslation4x4(-position[0], -position[1], -position[2]);
-        viewMatrix = FixedMatMath.multiply4x4(rotMatrixT, trans);
-        FixedMatMath.releaseMatrix(rotMatrix);
-        FixedMatMath.releaseMatrix(rotMatrixT);
-        FixedMatMath.releaseMatrix(trans);
+        FixedQuatMath.toRotationMatrix(orientation, rotation);
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                viewRotation[col * 4 + row] = rotation[row * 4 + col];
+            }
+            viewRotation[row * 4 + 3] = 0;
+            right[row] = rotation[row * 4];
+            up[row] = rotation[row * 4 + 1];
+            forward[row] = -rotation[row * 4 + 2];
+        }
+        viewRotation[12] = 0;
+        viewRotation[13] = 0;
+        viewRotation[14] = 0;
+        viewRotation[15] = FixedBaseMath.FIXED1;
+        rotationDirty = false;
     }
 
     public long[] getPosition() {
@@ -49,89 +97,80 @@ public class Camera {
         position[0] = x;
         position[1] = y;
         position[2] = z;
+        positionChanged();
     }
 
     public long[] getOrientation() {
         return orientation;
     }
 
+    /**
+     * Copies q; the caller keeps ownership of it.
+     */
     public void setOrientation(long[] q) {
-        if (orientation != null) {
-            FixedQuatMath.releaseQuaternion(orientation);
-        }
-        orientation = q;
+        FixedQuatMath.normalize(q, orientation);
+        orientationChanged();
     }
 
     // Applies a yaw rotation (about local up: [0,1,0]).
     public void addYaw(long angleQ) {
-        long[] delta = FixedQuatMath.fromAxisAngle(new long[]{0, FixedBaseMath.FIXED1, 0}, angleQ);
-        long[] multResult = FixedQuatMath.multiply(orientation, delta);
-        FixedQuatMath.releaseQuaternion(delta);
-        long[] normResult = FixedQuatMath.normalize(multResult);
-        FixedQuatMath.releaseQuaternion(multResult);
-        FixedQuatMath.releaseQuaternion(orientation);
-        orientation = normResult;
+        rotateLocal(1, angleQ);
     }
 
     // Applies a pitch rotation (about local right: [1,0,0]).
     public void addPitch(long angleQ) {
-        long[] delta = FixedQuatMath.fromAxisAngle(new long[]{FixedBaseMath.FIXED1, 0, 0}, angleQ);
-        long[] multResult = FixedQuatMath.multiply(orientation, delta);
-        FixedQuatMath.releaseQuaternion(delta);
-        long[] normResult = FixedQuatMath.normalize(multResult);
-        FixedQuatMath.releaseQuaternion(multResult);
-        FixedQuatMath.releaseQuaternion(orientation);
-        orientation = normResult;
+        rotateLocal(0, angleQ);
     }
 
     // Applies a roll rotation (about local forward: [0,0,1]).
     public void addRoll(long angleQ) {
-        long[] delta = FixedQuatMath.fromAxisAngle(new long[]{0, 0, FixedBaseMath.FIXED1}, angleQ);
-        long[] multResult = FixedQuatMath.multiply(orientation, delta);
-        FixedQuatMath.releaseQuaternion(delta);
-        long[] normResult = FixedQuatMath.normalize(multResult);
-        FixedQuatMath.releaseQuaternion(multResult);
-        FixedQuatMath.releaseQuaternion(orientation);
-        orientation = normResult;
+        rotateLocal(2, angleQ);
     }
 
-    // Returns the current rotation matrix derived from orientation.
-    public long[] getRotationMatrix() {
-        return FixedQuatMath.toRotationMatrix(orientation);
+    /**
+     * orientation = orientation * rotation about local axis 0, 1 or 2. The
+     * axis quaternion has a single non-zero vector term, so it is written
+     * directly instead of going through fromAxisAngle.
+     */
+    private void rotateLocal(int axis, long angleQ) {
+        FixedTrigMath.sincos(angleQ >> 1, delta, 2); // delta[2] = sin(angle / 2), delta[3] = cos(angle / 2)
+        long sinHalf = delta[2];
+        delta[0] = 0;
+        delta[1] = 0;
+        delta[2] = 0;
+        delta[axis] = sinHalf;
+        FixedQuatMath.multiply(orientation, delta, orientation);
+        FixedQuatMath.normalize(orientation, orientation);
+        orientationChanged();
     }
 
     // --- Translation Methods using current orientation ---
 
     public void moveForward(long amount) {
-        long[] rot = getRotationMatrix();
-        long[] localForward = new long[]{0, 0, -FixedBaseMath.FIXED1, 0};
-        long[] worldForward = new long[4];
-        FixedMatMath.transformPoint(rot, localForward, worldForward);
-        position[0] = FixedBaseMath.fixedAdd(position[0], FixedBaseMath.fixedMul(worldForward[0], amount));
-        position[1] = FixedBaseMath.fixedAdd(position[1], FixedBaseMath.fixedMul(worldForward[1], amount));
-        position[2] = FixedBaseMath.fixedAdd(position[2], FixedBaseMath.fixedMul(worldForward[2], amount));
-        FixedMatMath.releaseMatrix(rot);
+        move(getForward(), amount);
     }
 
     public void moveRight(long amount) {
-        long[] rot = getRotationMatrix();
-        long[] localRight = new long[]{FixedBaseMath.FIXED1, 0, 0, 0};
-        long[] worldRight = new long[4];
-        FixedMatMath.transformPoint(rot, localRight, worldRight);
-        position[0] = FixedBaseMath.fixedAdd(position[0], FixedBaseMath.fixedMul(worldRight[0], amount));
-        position[1] = FixedBaseMath.fixedAdd(position[1], FixedBaseMath.fixedMul(worldRight[1], amount));
-        position[2] = FixedBaseMath.fixedAdd(position[2], FixedBaseMath.fixedMul(worldRight[2], amount));
-        FixedMatMath.releaseMatrix(rot);
+        move(getRight(), amount);
     }
 
     public void moveUp(long amount) {
-        long[] rot = getRotationMatrix();
-        long[] localUp = new long[]{0, FixedBaseMath.FIXED1, 0, 0};
-        long[] worldUp = new long[4];
-        FixedMatMath.transformPoint(rot, localUp, worldUp);
-        position[0] = FixedBaseMath.fixedAdd(position[0], FixedBaseMath.fixedMul(worldUp[0], amount));
-        position[1] = FixedBaseMath.fixedAdd(position[1], FixedBaseMath.fixedMul(worldUp[1], amount));
-        position[2] = FixedBaseMath.fixedAdd(position[2], FixedBaseMath.fixedMul(worldUp[2], amount));
-        FixedMatMath.releaseMatrix(rot);
+        move(getUp(), amount);
+    }
+
+    private void move(long[] axis, long amount) {
+        position[0] = FixedBaseMath.fixedAdd(position[0], FixedBaseMath.fixedMul(axis[0], amount));
+        position[1] = FixedBaseMath.fixedAdd(position[1], FixedBaseMath.fixedMul(axis[1], amount));
+        position[2] = FixedBaseMath.fixedAdd(position[2], FixedBaseMath.fixedMul(axis[2], amount));
+        positionChanged();
+    }
+
+    private void orientationChanged() {
+        rotationDirty = true;
+        version++;
+    }
+
+    private void positionChanged() {
+        version++;
     }
 }
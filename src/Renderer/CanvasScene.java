@@ -20,6 +20,9 @@ public class CanvasScene extends Canvas implements Runnable {
     private final int MULTIPLIER_MAX = 100;
     
     private static int DITHER_LEVEL_GLOBAL = 0;
+    // Motion trails: per-channel decay (/256) and frames between decay passes, 0 clears every frame
+    private static int TRAIL_DECAY = 192;
+    private static int TRAIL_DECAY_INTERVAL = 0;
 
     public CanvasScene() {
         setFullScreenMode(true);
@@ -35,6 +38,8 @@ public class CanvasScene extends Canvas implements Runnable {
 
         scene = new Scene(sceneObjectsNum, fovQ, aspectQ, nearQ, farQ);
         addObjects();
+        scene.bakeStaticObjects();
+        scene.setPersistence(TRAIL_DECAY, TRAIL_DECAY_INTERVAL);
     }
 
 
@@ -50,8 +55,7 @@ public class CanvasScene extends Canvas implements Runnable {
         sceneObject.tx = FixedBaseMath.toFixed(20.0f);
         sceneObject.ty = FixedBaseMath.toFixed(10.0f);
         sceneObject.tz = FixedBaseMath.toFixed(-500.0f);
-        sceneObject.rotX = FixedBaseMath.toFixed(1f);
-        sceneObject.rotY = FixedBaseMath.toFixed(0.4f);
+        sceneObject.setRotation(FixedBaseMath.toFixed(1f), FixedBaseMath.toFixed(0.4f), 0);
         sceneObject.scale = FixedBaseMath.toFixed(200.0f);
         sceneObject.updateBoundingSphereRadiusScaled();
 
@@ -63,9 +67,11 @@ public class CanvasScene extends Canvas implements Runnable {
                 FixedBaseMath.toFixed(1f), // Alpha ramp distance near
                 FixedBaseMath.toFixed(1e2f), // Alpha ramp distance far
                 RenderEffects.TYPE_EDGES, // 0 - vertices, 1 - edges
-                1, // Primitive width (TODO)
+                1, // Primitive width in pixels
                 RenderEffects.SHAPE_P, // Primitive shape
                 DITHER_LEVEL_GLOBAL);  // Dither level
+        sceneObject.material.antiAliased = true;
+        sceneObject.material.update();
 
         scene.addObject(sceneObject);
         
@@ -80,8 +86,7 @@ public class CanvasScene extends Canvas implements Runnable {
         sceneObject.tx = FixedBaseMath.toFixed(200.0f);
         sceneObject.ty = FixedBaseMath.toFixed(100.0f);
         sceneObject.tz = FixedBaseMath.toFixed(-500.0f);
-        sceneObject.rotX = FixedBaseMath.toFixed(1f);
-        sceneObject.rotY = FixedBaseMath.toFixed(0.4f);
+        sceneObject.setRotation(FixedBaseMath.toFixed(1f), FixedBaseMath.toFixed(0.4f), 0);
         sceneObject.scale = FixedBaseMath.toFixed(200.0f);
         sceneObject.updateBoundingSphereRadiusScaled();
 
@@ -93,7 +98,7 @@ public class CanvasScene extends Canvas implements Runnable {
                 FixedBaseMath.toFixed(1f), // Alpha ramp distance near
                 FixedBaseMath.toFixed(1e3f), // Alpha ramp distance far
                 RenderEffects.TYPE_EDGES, // 0 - vertices, 1 - edges
-                1, // Primitive width (TODO)
+                1, // Primitive width in pixels
                 RenderEffects.SHAPE_P, // Primitive shape
                 DITHER_LEVEL_GLOBAL);  // Dither level
 
@@ -110,8 +115,7 @@ public class CanvasScene extends Canvas implements Runnable {
         sceneObject.tx = FixedBaseMath.toFixed(400.0f);
         sceneObject.ty = FixedBaseMath.toFixed(200.0f);
         sceneObject.tz = FixedBaseMath.toFixed(-500.0f);
-        sceneObject.rotX = FixedBaseMath.toFixed(1f);
-        sceneObject.rotY = FixedBaseMath.toFixed(0.4f);
+        sceneObject.setRotation(FixedBaseMath.toFixed(1f), FixedBaseMath.toFixed(0.4f), 0);
         sceneObject.scale = FixedBaseMath.toFixed(200.0f);
         sceneObject.updateBoundingSphereRadiusScaled();
 
@@ -123,7 +127,7 @@ public class CanvasScene extends Canvas implements Runnable {
                 FixedBaseMath.toFixed(1f), // Alpha ramp distance near
                 FixedBaseMath.toFixed(1e4f), // Alpha ramp distance far
                 RenderEffects.TYPE_EDGES, // 0 - vertices, 1 - edges
-                1, // Primitive width (TODO)
+                1, // Primitive width in pixels
                 RenderEffects.SHAPE_P, // Primitive shape
                 DITHER_LEVEL_GLOBAL);  // Dither level
 
@@ -141,9 +145,10 @@ public class CanvasScene extends Canvas implements Runnable {
         sceneObject.tx = FixedBaseMath.toFixed(15000.0f);
         sceneObject.ty = FixedBaseMath.toFixed(-30000.0f);
         sceneObject.tz = FixedBaseMath.toFixed(-50000.0f);
-        sceneObject.rotX = FixedBaseMath.toFixed(FixedTrigMath.degreesToRadians(0)+0.2f);
-        sceneObject.rotY = FixedBaseMath.toFixed(0.8f);
-        sceneObject.rotZ = FixedBaseMath.toFixed(-0.8f);
+        sceneObject.setRotation(
+                FixedBaseMath.toFixed(FixedTrigMath.degreesToRadians(0)+0.2f),
+                FixedBaseMath.toFixed(0.8f),
+                FixedBaseMath.toFixed(-0.8f));
         sceneObject.scale = FixedBaseMath.toFixed(10000.0f);
         sceneObject.updateBoundingSphereRadiusScaled();
 
@@ -155,10 +160,13 @@ public class CanvasScene extends Canvas implements Runnable {
                 FixedBaseMath.toFixed(1f), // Alpha ramp distance near
                 FixedBaseMath.toFixed(1e5f), // Alpha ramp distance far
                 RenderEffects.TYPE_EDGES, // 0 - vertices, 1 - edges
-                1, // Primitive width (TODO)
+                1, // Primitive width in pixels
                 RenderEffects.SHAPE_P, // Primitive shape
                 DITHER_LEVEL_GLOBAL);  // Dither level
 
+        sceneObject.isStatic = true;
+        // Solid core for occlusion, inside every face of the icosphere
+        sceneObject.occluderRadius = FixedBaseMath.toFixed(0.9f);
         scene.addObject(sceneObject);
      
         
@@ -171,9 +179,7 @@ public class CanvasScene extends Canvas implements Runnable {
         sceneObject.ty = FixedBaseMath.toFixed(-30000.0f);
         sceneObject.tz = FixedBaseMath.toFixed(-50000.0f);
         sceneObject.scale = FixedBaseMath.toFixed(15000.0f);
-        sceneObject.rotX = FixedBaseMath.toFixed(0.2f);
-        sceneObject.rotY = FixedBaseMath.toFixed(0.8f);
-        sceneObject.rotZ = FixedBaseMath.toFixed(-0.8f);
+        sceneObject.setRotation(FixedBaseMath.toFixed(0.2f), FixedBaseMath.toFixed(0.8f), FixedBaseMath.toFixed(-0.8f));
         sceneObject.updateBoundingSphereRadiusScaled();
 
         sceneObject.material = new Material(
@@ -184,10 +190,11 @@ public class CanvasScene extends Canvas implements Runnable {
                 FixedBaseMath.toFixed(1f), // Alpha ramp distance near
                 FixedBaseMath.toFixed(1e5f), // Alpha ramp distance far
                 RenderEffects.TYPE_EDGES, // 0 - vertices, 1 - edges
-                1, // Primitive width (TODO)
+                1, // Primitive width in pixels
                 RenderEffects.SHAPE_P, // Primitive shape
                 DITHER_LEVEL_GLOBAL);  // Dither level
 
+        sceneObject.isStatic = true;
         scene.addObject(sceneObject);
         
         // Ring 2
@@ -198,9 +205,7 @@ public class CanvasScene extends Canvas implements Runnable {
         sceneObject.ty = FixedBaseMath.toFixed(-30000.0f);
         sceneObject.tz = FixedBaseMath.toFixed(-50000.0f);
         sceneObject.scale = FixedBaseMath.toFixed(18000.0f);
-        sceneObject.rotX = FixedBaseMath.toFixed(0.2f);
-        sceneObject.rotY = FixedBaseMath.toFixed(0.8f);
-        sceneObject.rotZ = FixedBaseMath.toFixed(-0.8f);
+        sceneObject.setRotation(FixedBaseMath.toFixed(0.2f), FixedBaseMath.toFixed(0.8f), FixedBaseMath.toFixed(-0.8f));
         sceneObject.updateBoundingSphereRadiusScaled();
 
         sceneObject.material = new Material(
@@ -211,10 +216,13 @@ public class CanvasScene extends Canvas implements Runnable {
                 FixedBaseMath.toFixed(1f), // Alpha ramp distance near
                 FixedBaseMath.toFixed(1e5f), // Alpha ramp distance far
                 RenderEffects.TYPE_EDGES, // 0 - vertices, 1 - edges
-                1, // Primitive width (TODO)
+                1, // Primitive width in pixels
                 RenderEffects.SHAPE_P, // Primitive shape
                 DITHER_LEVEL_GLOBAL);  // Dither level
+        sceneObject.material.blendMode = RenderEffects.BLEND_ALPHA;
+        sceneObject.material.update();
 
+        sceneObject.isStatic = true;
         scene.addObject(sceneObject);
 
 
@@ -229,18 +237,21 @@ public class CanvasScene extends Canvas implements Runnable {
         sceneObject.scale = FixedBaseMath.toFixed(5.0f);
         sceneObject.updateBoundingSphereRadiusScaled();
 
-        sceneObject.material = new Material(
+        // Both cubes share one material, so baking merges them into a single batch
+        Material cubeMaterial = new Material(
                 0xFFAAAAFF, // Color near
                 0xFFFF2222, // Color far
                 FixedBaseMath.toFixed(1f), // Material z-near
-                FixedBaseMath.toFixed(5000f), // Material z-far
-                FixedBaseMath.toFixed(5f), // Alpha ramp distance near
-                FixedBaseMath.toFixed(500f), // Alpha ramp distance far
+                FixedBaseMath.toFixed(1e5f), // Material z-far
+                FixedBaseMath.toFixed(1f), // Alpha ramp distance near
+                FixedBaseMath.toFixed(1e4f), // Alpha ramp distance far
                 RenderEffects.TYPE_EDGES, // 0 - vertices, 1 - edges
-                1, // Primitive width (TODO)
+                1, // Primitive width in pixels
                 RenderEffects.SHAPE_P, // Primitive shape
                 DITHER_LEVEL_GLOBAL);  // Dither level
+        sceneObject.material = cubeMaterial;
 
+        sceneObject.isStatic = true;
         scene.addObject(sceneObject);
         
         
@@ -255,18 +266,9 @@ public class CanvasScene extends Canvas implements Runnable {
         sceneObject.scale = FixedBaseMath.toFixed(50.0f);
         sceneObject.updateBoundingSphereRadiusScaled();
 
-        sceneObject.material = new Material(
-                0xFFAAAAFF, // Color near
-                0xFFFF2222, // Color far
-                FixedBaseMath.toFixed(1f), // Material z-near
-                FixedBaseMath.toFixed(1e5f), // Material z-far
-                FixedBaseMath.toFixed(1f), // Alpha ramp distance near
-                FixedBaseMath.toFixed(1e4f), // Alpha ramp distance far
-                RenderEffects.TYPE_EDGES, // 0 - vertices, 1 - edges
-                1, // Primitive width (TODO)
-                RenderEffects.SHAPE_P, // Primitive shape
-                DITHER_LEVEL_GLOBAL);  // Dither level
+        sceneObject.material = cubeMaterial;
 
+        sceneObject.isStatic = true;
         scene.addObject(sceneObject);
 
         // Make another model.
@@ -286,10 +288,11 @@ public class CanvasScene extends Canvas implements Runnable {
                 FixedBaseMath.toFixed(1f), // Alpha ramp distance near
                 FixedBaseMath.toFixed(1e5f), // Alpha ramp distance far
                 RenderEffects.TYPE_VERTICES, // 0 - vertices, 1 - edges
-                1, // Primitive width (TODO)
+                1, // Primitive width in pixels
                 RenderEffects.SHAPE_S, // Primitive shape
                 DITHER_LEVEL_GLOBAL);  // Dither level
 
+        sceneObject.isStatic = true;
         scene.addObject(sceneObject);
         
         
@@ -310,10 +313,11 @@ public class CanvasScene extends Canvas implements Runnable {
                 FixedBaseMath.toFixed(1f), // Alpha ramp distance near
                 FixedBaseMath.toFixed(1e5f), // Alpha ramp distance far
                 RenderEffects.TYPE_VERTICES, // 0 - vertices, 1 - edges
-                1, // Primitive width (TODO)
+                1, // Primitive width in pixels
                 RenderEffects.SHAPE_P, // Primitive shape
                 DITHER_LEVEL_GLOBAL);  // Dither level
 
+        sceneObject.isStatic = true;
         scene.addObject(sceneObject);
         
         // Make another model.
@@ -333,10 +337,11 @@ public class CanvasScene extends Canvas implements Runnable {
                 FixedBaseMath.toFixed(1f), // Alpha ramp distance near
                 FixedBaseMath.toFixed(1e5f), // Alpha ramp distance far
                 RenderEffects.TYPE_VERTICES, // 0 - vertices, 1 - edges
-                1, // Primitive width (TODO)
+                1, // Primitive width in pixels
                 RenderEffects.SHAPE_X, // Primitive shape
                 DITHER_LEVEL_GLOBAL);  // Dither level
 
+        sceneObject.isStatic = true;
         scene.addObject(sceneObject);
     }
 
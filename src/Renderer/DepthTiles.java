@@ -0,0 +1,110 @@
+package Renderer;
+
+/**
+ * Coarse depth buffer holding the farthest depth of each 8x8 tile of the
+ * full-resolution buffer. A fragment at or beyond its tile's max cannot pass
+ * the per-pixel test, so it is rejected without reading the depth buffer.
+ * The max is driven by writes alone: a tile rejects nothing until every
+ * pixel in it has been written this frame.
+ */
+public class DepthTiles {
+
+    public static final int TILE_SHIFT = 3;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+    public final int tilesX;
+    public final int tilesY;
+    public final long[] tileMax; // farthest depth key in the tile, Long.MAX_VALUE while not fully covered
+
+    private final int width;
+    private final int height;
+    private final long[] depthBuffer;
+    private final int[] filled;   // pixels written at least once this frame
+    private final int[] tileArea; // pixels inside the screen, smaller for edge tiles
+    private long frameLimit; // depth keys at or above this were not written this frame
+
+    public DepthTiles(int width, int height, long[] depthBuffer) {
+        this.width = width;
+        this.height = height;
+        this.depthBuffer = depthBuffer;
+        tilesX = (width + TILE_SIZE - 1) >> TILE_SHIFT;
+        tilesY = (height + TILE_SIZE - 1) >> TILE_SHIFT;
+        tileMax = new long[tilesX * tilesY];
+        filled = new int[tilesX * tilesY];
+        tileArea = new int[tilesX * tilesY];
+        for (int ty = 0; ty < tilesY; ty++) {
+            int h = Math.min(TILE_SIZE, height - (ty << TILE_SHIFT));
+            for (int tx = 0; tx < tilesX; tx++) {
+                int w = Math.min(TILE_SIZE, width - (tx << TILE_SHIFT));
+                tileArea[ty * tilesX + tx] = w * h;
+            }
+        }
+        clear(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param frameLimit smallest depth key that does not belong to the frame
+     *                   about to be drawn (see Renderer.depthKey)
+     */
+    public void clear(long frameLimit) {
+        this.frameLimit = frameLimit;
+        for (int i = 0; i < tileMax.length; i++) {
+            tileMax[i] = Long.MAX_VALUE;
+            filled[i] = 0;
+        }
+    }
+
+    public int tileIndex(int x, int y) {
+        return (y >> TILE_SHIFT) * tilesX + (x >> TILE_SHIFT);
+    }
+
+    /**
+     * Keeps tile t's max current after (x, y) was overwritten. Only the first
+     * write to a pixel this frame or a write over the tile's farthest pixel
+     * can change it.
+     */
+    public void noteWrite(int t, int x, int y, long oldZ) {
+        if (oldZ >= frameLimit) {
+            if (++filled[t] == tileArea[t]) {
+                tileMax[t] = scanMax(x >> TILE_SHIFT, y >> TILE_SHIFT);
+            }
+        } else if (oldZ == tileMax[t]) {
+            tileMax[t] = scanMax(x >> TILE_SHIFT, y >> TILE_SHIFT);
+        }
+    }
+
+    /**
+     * True if nothing at depth zMin or farther can pass inside the pixel
+     * rectangle [x0, x1] x [y0, y1], which must already be clamped to the screen.
+     */
+    public boolean rejectsRect(int x0, int y0, int x1, int y1, long zMin) {
+        int tx1 = x1 >> TILE_SHIFT;
+        int ty1 = y1 >> TILE_SHIFT;
+        for (int ty = y0 >> TILE_SHIFT; ty <= ty1; ty++) {
+            int row = ty * tilesX;
+            for (int tx = x0 >> TILE_SHIFT; tx <= tx1; tx++) {
+                if (zMin < tileMax[row + tx]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private long scanMax(int tx, int ty) {
+        int x0 = tx << TILE_SHIFT;
+        int y0 = ty << TILE_SHIFT;
+        int x1 = Math.min(x0 + TILE_SIZE, width);
+        int y1 = Math.min(y0 + TILE_SIZE, height);
+        long max = Long.MIN_VALUE;
+        for (int y = y0; y < y1; y++) {
+            int idx = y * width + x0;
+            for (int x = x0; x < x1; x++, idx++) {
+                if (depthBuffer[idx] > max) {
+                    max = depthBuffer[idx];
+                }
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,121 @@
+package Renderer;
+
+import FixedMath.FixedBaseMath;
+import FixedMath.FixedTrigMath;
+
+/**
+ * View frustum in camera space. The camera looks down -Z, so a point's view
+ * distance is d = -z. The side planes pass through the eye and are kept as the
+ * tangent of the half field of view; the secant scales a radius into the
+ * same units as (x - d * tan).
+ */
+public class Frustum {
+
+    public static final int OUTSIDE = 0;
+    public static final int INTERSECT = 1;
+    public static final int INSIDE = 2;
+
+    public static final int OUT_LEFT = 1;
+    public static final int OUT_RIGHT = 2;
+    public static final int OUT_BOTTOM = 4;
+    public static final int OUT_TOP = 8;
+    public static final int OUT_NEAR = 16;
+    public static final int OUT_FAR = 32;
+
+    public long tanHalfHorizQ;
+    public long tanHalfVertQ;
+    public long secHalfHorizQ;
+    public long secHalfVertQ;
+    public long nearQ;
+
+    public void update(long fovDegQ, long aspectQ, long nearQ) {
+        long halfFovRadQ = FixedBaseMath.fixedMul(fovDegQ >> 1, FixedTrigMath.RADFACTOR);
+        tanHalfVertQ = FixedTrigMath.tan(halfFovRadQ);
+        tanHalfHorizQ = FixedBaseMath.fixedMul(tanHalfVertQ, aspectQ);
+        secHalfVertQ = FixedBaseMath.sqrt(FixedBaseMath.FIXED1 + FixedBaseMath.fixedMul(tanHalfVertQ, tanHalfVertQ));
+        secHalfHorizQ = FixedBaseMath.sqrt(FixedBaseMath.FIXED1 + FixedBaseMath.fixedMul(tanHalfHorizQ, tanHalfHorizQ));
+        this.nearQ = nearQ;
+    }
+
+    /**
+     * Classifies a camera-space sphere against the side planes, the near plane
+     * and the given far distance.
+     */
+    public int testSphere(long cx, long cy, long cz, long radius, long farQ) {
+        long d = -cz;
+        if (d + radius < nearQ || d - radius > farQ) {
+            return OUTSIDE;
+        }
+        int result = INSIDE;
+        if (d - radius < nearQ || d + radius > farQ) {
+            result = INTERSECT;
+        }
+
+        long rH = FixedBaseMath.fixedMul(radius, secHalfHorizQ);
+        long lrLimit = FixedBaseMath.fixedMul(d, tanHalfHorizQ);
+        long right = cx - lrLimit;
+        long left = -cx - lrLimit;
+        if (right > rH || left > rH) {
+            return OUTSIDE;
+        }
+        if (right > -rH || left > -rH) {
+            result = INTERSECT;
+        }
+
+        long rV = FixedBaseMath.fixedMul(radius, secHalfVertQ);
+        long tbLimit = FixedBaseMath.fixedMul(d, tanHalfVertQ);
+        long top = cy - tbLimit;
+        long bottom = -cy - tbLimit;
+        if (top > rV || bottom > rV) {
+            return OUTSIDE;
+        }
+        if (top > -rV || bottom > -rV) {
+            result = INTERSECT;
+        }
+        return result;
+    }
+
+    /**
+     * Bit set of the planes a camera-space point lies outside of.
+     */
+    public int outcode(long x, long y, long z, long farQ) {
+        long d = -z;
+        int code = 0;
+        long lrLimit = FixedBaseMath.fixedMul(d, tanHalfHorizQ);
+        if (x > lrLimit) {
+            code |= OUT_RIGHT;
+        }
+        if (-x > lrLimit) {
+            code |= OUT_LEFT;
+        }
+        long tbLimit = FixedBaseMath.fixedMul(d, tanHalfVertQ);
+        if (y > tbLimit) {
+            code |= OUT_TOP;
+        }
+        if (-y > tbLimit) {
+            code |= OUT_BOTTOM;
+        }
+        if (d < nearQ) {
+            code |= OUT_NEAR;
+        }
+        if (d > farQ) {
+            code |= OUT_FAR;
+        }
+        return code;
+    }
+
+    /**
+     * True if all of the camera-space points (xyz triplets) lie outside one plane.
+     */
+    public boolean isBoxOutside(long[] corners, int count, long farQ) {
+        int common = ~0;
+        for (int i = 0; i < count; i++) {
+            int base = i * 3;
+            common &= outcode(corners[base], corners[base + 1], corners[base + 2], farQ);
+            if (common == 0) {
+                return false;
+            }
+        }
+        return common != 0;
+    }
+}
@@ -4,6 +4,12 @@ import FixedMath.FixedBaseMath;
 
 public class Material {
 
+    private static int nextId = 0;
+
+    // Depth shading table size, as a power of two
+    public static final int SHADE_LUT_BITS = 8;
+    public static final int SHADE_LUT_SIZE = 1 << SHADE_LUT_BITS;
+
     public int colorNear;    // e.g., 0xFFFF0000
     public int colorFar;     // e.g., 0x110000FF
     
@@ -14,9 +20,31 @@ public class Material {
     public long fadeDistanceFarQ;  // in Q
 
     public int renderType;   // e.g., 0 = vertices, 1 = edges
-    public int primitiveWidth;
+    public int primitiveWidth; // line width and vertex block size in pixels
     public int primitiveShape;
     public int ditherLevel;
+    public int blendMode = RenderEffects.BLEND_OPAQUE; // RenderEffects.BLEND_*
+    public boolean antiAliased; // Wu lines for single-pixel edges
+
+    // Derived render state, rebuilt by update()
+    public final int id;
+    public int sortKey;       // render queue key: type, kernel, shape, dither, id
+    public int lineKernel;    // RenderLine.KERNEL_*
+    // Ordered dither as packed row masks: pixel (x, y) at coverage c is drawn
+    // if bit (x & ditherMask) of ditherRows[(c << ditherRowShift) | (y & ditherMask)]
+    // is set, where c = alpha >>> coverageShift. Null when not dithering.
+    public int[] ditherRows;
+    public int ditherRowShift;
+    public int ditherMask;
+    public int coverageShift;
+    public boolean translucent; // blended, drawn after opaque objects
+
+    // Shaded ARGB (color ramp and distance fade) per depth bucket: the entry
+    // for depth z is shadeLut[(z - nearMarginQ) >> shadeLutShift]. Depths
+    // below shadeExactBelow fall inside the near fade and use shade() instead.
+    public int[] shadeLut;
+    public int shadeLutShift;
+    public long shadeExactBelow;
 
     public Material(
             int colorNear, 
@@ -33,6 +61,7 @@ public class Material {
             int primitiveShape, 
             int ditherLevel) {
         
+        this.id = nextId++;
         this.colorNear = colorNear;
         this.colorFar = colorFar;
         this.nearMarginQ = nearMarginQ;
@@ -46,8 +75,146 @@ public class Material {
         this.fadeDistanceNearQ = fadeDistanceQNear;
         this.fadeDistanceFarQ = fadeDistanceQFar;
         this.renderType = renderType;     
-        this.primitiveWidth = primitiveWidth;
+        this.primitiveWidth = (primitiveWidth < 1) ? 1 : primitiveWidth;
         this.primitiveShape = primitiveShape;
         this.ditherLevel = ditherLevel;
+        update();
+    }
+
+    /**
+     * Recomputes the derived state. Call after changing any public field.
+     */
+    public void update() {
+        switch (ditherLevel) {
+            case 2:
+                coverageShift = 6;
+                ditherRowShift = 1;
+                ditherRows = buildDitherRows(RenderLine.DITHER_2X2, ditherRowShift, coverageShift);
+                break;
+            case 4:
+                coverageShift = 4;
+                ditherRowShift = 2;
+                ditherRows = buildDitherRows(RenderLine.DITHER_4X4, ditherRowShift, coverageShift);
+                break;
+            case 8:
+                coverageShift = 2;
+                ditherRowShift = 3;
+                ditherRows = buildDitherRows(RenderLine.DITHER_8X8, ditherRowShift, coverageShift);
+                break;
+            default:
+                coverageShift = 0;
+                ditherRowShift = 0;
+                ditherRows = null;
+                break;
+        }
+        ditherMask = (1 << ditherRowShift) - 1;
+
+        if (ditherRows != null) {
+            lineKernel = RenderLine.KERNEL_DITHER;
+        } else if (primitiveWidth > 1) {
+            lineKernel = RenderLine.KERNEL_WIDE;
+        } else if (antiAliased) {
+            lineKernel = RenderLine.KERNEL_WU;
+        } else if (primitiveShape == RenderEffects.SHAPE_P) {
+            lineKernel = RenderLine.KERNEL_PIXEL;
+        } else {
+            lineKernel = RenderLine.KERNEL_MARKER;
+        }
+
+        translucent = blendMode != RenderEffects.BLEND_OPAQUE;
+        buildShadeLut();
+
+        sortKey = ((renderType & 0x7) << 28)
+                | ((lineKernel & 0xF) << 24)
+                | ((primitiveShape & 0xF) << 20)
+                | ((ditherLevel & 0xF) << 16)
+                | (id & 0xFFFF);
+    }
+
+    /**
+     * True if other draws exactly like this material: every public setting
+     * matches, so the derived state does too. Only the id may differ.
+     */
+    public boolean hasSameRenderState(Material other) {
+        return colorNear == other.colorNear
+                && colorFar == other.colorFar
+                && nearMarginQ == other.nearMarginQ
+                && farMarginQ == other.farMarginQ
+                && fadeDistanceNearQ == other.fadeDistanceNearQ
+                && fadeDistanceFarQ == other.fadeDistanceFarQ
+                && renderType == other.renderType
+                && primitiveWidth == other.primitiveWidth
+                && primitiveShape == other.primitiveShape
+                && ditherLevel == other.ditherLevel
+                && blendMode == other.blendMode
+                && antiAliased == other.antiAliased;
+    }
+
+    /**
+     * One row mask per coverage level and matrix row. Coverage 0 draws no
+     * pixels and the top level draws all of them; in between, a cell with
+     * threshold t is drawn once (t + 1) / cells <= c / (levels - 1).
+     */
+    private static int[] buildDitherRows(byte[][] matrix, int rowShift, int coverageShift) {
+        int size = 1 << rowShift;
+        int cells = size * size;
+        int levels = 256 >> coverageShift;
+        int[] rows = new int[levels << rowShift];
+        for (int c = 0; c < levels; c++) {
+            for (int y = 0; y < size; y++) {
+                int bits = 0;
+                for (int x = 0; x < size; x++) {
+                    if ((matrix[y][x] + 1) * (levels - 1) <= c * cells) {
+                        bits |= 1 << x;
+                    }
+                }
+                rows[(c << rowShift) | y] = bits;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Color at depth z, blended from colorNear to colorFar over the margins,
+     * with its alpha scaled by the distance fade. Straight alpha; zero
+     * outside the margins.
+     */
+    public int shade(long z) {
+        int alphaFade = RenderEffects.computeFadeAlpha(z, nearMarginQ, farMarginQ,
+                fadeDistanceNearQ, fadeDistanceFarQ);
+        if (alphaFade <= 0) {
+            return 0;
+        }
+        int color = RenderEffects._interpolateColor_(z, nearMarginQ, farMarginQ, colorNear, colorFar);
+        int alpha = (((color >>> 24) & 0xFF) * alphaFade) >> 8;
+        return (alpha << 24) | (color & 0x00FFFFFF);
+    }
+
+    /**
+     * Samples shade() at the middle of each depth bucket. The near fade ramp
+     * is usually shorter than one bucket, so depths up to one bucket past it
+     * are left to the exact path.
+     */
+    private void buildShadeLut() {
+        long range = farMarginQ - nearMarginQ;
+        int shift = 0;
+        while ((range >> shift) >= SHADE_LUT_SIZE) {
+            shift++;
+        }
+        shadeLutShift = shift;
+        if (shadeLut == null) {
+            shadeLut = new int[SHADE_LUT_SIZE];
+        }
+        long bucket = 1L << shift;
+        for (int i = 0; i < SHADE_LUT_SIZE; i++) {
+            long z = nearMarginQ + i * bucket + (bucket >> 1);
+            if (z > farMarginQ) {
+                z = farMarginQ;
+            }
+            shadeLut[i] = shade(z);
+        }
+        shadeExactBelow = (fadeDistanceNearQ > 0)
+                ? nearMarginQ + fadeDistanceNearQ + bucket
+                : nearMarginQ;
     }
 }
@@ -1,14 +1,386 @@
 package Renderer;
 
+import FixedMath.Fixed16MatMath;
+import FixedMath.FixedBaseMath;
+import java.util.Vector;
+
 public class Model {
 
+    // Max primitives (edges, or vertices for point models) per cluster
+    public static final int CLUSTER_SIZE = 32;
+
     public long[][] vertices; // each vertex is [x,y,z] in Q
+    public long[] vertexX;    // vertices again as separate x, y, z arrays,
+    public long[] vertexY;    // for the batch transforms
+    public long[] vertexZ;
     public int[][] edges;     // indices into vertices
     public long boundingSphereRadius;
-    
-    public Model(long[][] vertices, int[][] edges, long boundingSphereRadius) {
+    public long[] boundingSphereCenter; // fitted sphere center in model space, [x,y,z] in Q
+    public long[] aabbMin; // local axis-aligned bounding box, [x,y,z] in Q
+    public long[] aabbMax;
+
+    // Spatially coherent clusters. Cluster c owns the edges
+    // [clusterEdgeStart[c], clusterEdgeStart[c + 1]) and the vertices
+    // [clusterVertexStart[c], clusterVertexStart[c + 1]); its bounding sphere
+    // is stored as cx, cy, cz, r at clusterSpheres[c * 4].
+    public int clusterCount;
+    public int[] clusterEdgeStart;
+    public int[] clusterVertexStart;
+    public long[] clusterSpheres;
+
+    // Vertex offsets from boundingSphereCenter for the int transform path
+    // (see Constants.Common.INT_TRANSFORM): Fixed16MatMath.OFFSET_BITS
+    // significands, offset = local16X[i] << local16Shift in Q
+    public int[] local16X;
+    public int[] local16Y;
+    public int[] local16Z;
+    public int local16Shift;
+
+    public Model(long[][] vertices, int[][] edges) {
         this.vertices = vertices;
         this.edges = edges;
-        this.boundingSphereRadius = boundingSphereRadius;
+        this.boundingSphereCenter = new long[3];
+        this.aabbMin = new long[3];
+        this.aabbMax = new long[3];
+        computeBounds();
+        buildClusters(CLUSTER_SIZE);
+    }
+
+    /**
+     * Fits the local AABB and bounding sphere to the current vertices.
+     */
+    public void computeBounds() {
+        int n = vertices.length;
+        if (n == 0) {
+            for (int k = 0; k < 3; k++) {
+                aabbMin[k] = 0;
+                aabbMax[k] = 0;
+                boundingSphereCenter[k] = 0;
+            }
+            boundingSphereRadius = 0;
+            return;
+        }
+        computeAabb(0, n, aabbMin, aabbMax);
+        long[] sphere = new long[4];
+        fitSphere(0, n, sphere, 0);
+        boundingSphereCenter[0] = sphere[0];
+        boundingSphereCenter[1] = sphere[1];
+        boundingSphereCenter[2] = sphere[2];
+        boundingSphereRadius = sphere[3];
+    }
+
+    /**
+     * Splits the model into clusters of at most maxPrimitives edges (or
+     * vertices, for point models) by recursive median cuts along the longest
+     * axis. Vertices shared between clusters are duplicated so every cluster
+     * has its own contiguous vertex range.
+     */
+    public void buildClusters(int maxPrimitives) {
+        boolean byEdges = edges.length > 0;
+        int count = byEdges ? edges.length : vertices.length;
+
+        if (count <= maxPrimitives) {
+            clusterCount = 1;
+            clusterEdgeStart = new int[]{0, edges.length};
+            clusterVertexStart = new int[]{0, vertices.length};
+            clusterSpheres = new long[]{
+                boundingSphereCenter[0], boundingSphereCenter[1], boundingSphereCenter[2],
+                boundingSphereRadius
+            };
+            buildVertexArrays();
+            buildLocal16();
+            return;
+        }
+
+        // Representative point per primitive: edge midpoint or the vertex itself
+        long[][] centers = new long[count][];
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            if (byEdges) {
+                long[] a = vertices[edges[i][0]];
+                long[] b = vertices[edges[i][1]];
+                centers[i] = new long[]{
+                    a[0] + ((b[0] - a[0]) >> 1),
+                    a[1] + ((b[1] - a[1]) >> 1),
+                    a[2] + ((b[2] - a[2]) >> 1)
+                };
+            } else {
+                centers[i] = vertices[i];
+            }
+        }
+        Vector ranges = new Vector();
+        splitRange(order, centers, 0, count, maxPrimitives, ranges);
+
+        int n = ranges.size();
+        clusterCount = n;
+        clusterEdgeStart = new int[n + 1];
+        clusterVertexStart = new int[n + 1];
+        clusterSpheres = new long[n * 4];
+
+        Vector newVertices = new Vector(vertices.length);
+        int[][] newEdges = new int[edges.length][];
+        int[] remap = new int[vertices.length];
+        int[] stamp = new int[vertices.length];
+        for (int i = 0; i < stamp.length; i++) {
+            stamp[i] = -1;
+        }
+
+        int edgeIndex = 0;
+        for (int c = 0; c < n; c++) {
+            int[] range = (int[]) ranges.elementAt(c);
+            clusterEdgeStart[c] = edgeIndex;
+            clusterVertexStart[c] = newVertices.size();
+            for (int k = range[0]; k < range[1]; k++) {
+                int p = order[k];
+                if (byEdges) {
+                    int[] e = edges[p];
+                    for (int j = 0; j < 2; j++) {
+                        int v = e[j];
+                        if (stamp[v] != c) {
+                            stamp[v] = c;
+                            remap[v] = newVertices.size();
+                            newVertices.addElement(vertices[v]);
+                        }
+                    }
+                    newEdges[edgeIndex++] = new int[]{remap[e[0]], remap[e[1]]};
+                } else {
+                    newVertices.addElement(vertices[p]);
+                }
+            }
+        }
+        clusterEdgeStart[n] = edgeIndex;
+        clusterVertexStart[n] = newVertices.size();
+
+        long[][] vertexArray = new long[newVertices.size()][];
+        for (int i = 0; i < vertexArray.length; i++) {
+            vertexArray[i] = (long[]) newVertices.elementAt(i);
+        }
+        vertices = vertexArray;
+        edges = newEdges;
+
+        for (int c = 0; c < n; c++) {
+            fitSphere(clusterVertexStart[c], clusterVertexStart[c + 1], clusterSpheres, c * 4);
+        }
+        buildVertexArrays();
+        buildLocal16();
+    }
+
+    /**
+     * Fills vertexX/Y/Z from the current vertices.
+     */
+    public void buildVertexArrays() {
+        int n = vertices.length;
+        vertexX = new long[n];
+        vertexY = new long[n];
+        vertexZ = new long[n];
+        for (int i = 0; i < n; i++) {
+            long[] v = vertices[i];
+            vertexX[i] = v[0];
+            vertexY[i] = v[1];
+            vertexZ[i] = v[2];
+        }
+    }
+
+    /**
+     * Fills local16X/Y/Z and local16Shift from the current vertices.
+     */
+    public void buildLocal16() {
+        int n = vertices.length;
+        long cx = boundingSphereCenter[0];
+        long cy = boundingSphereCenter[1];
+        long cz = boundingSphereCenter[2];
+        long bits = 0;
+        for (int i = 0; i < n; i++) {
+            long[] v = vertices[i];
+            for (int k = 0; k < 3; k++) {
+                long d = v[k] - boundingSphereCenter[k];
+                bits |= (d < 0) ? -d : d;
+            }
+        }
+        int shift = Fixed16MatMath.blockShift(bits, Fixed16MatMath.OFFSET_BITS);
+        local16X = new int[n];
+        local16Y = new int[n];
+        local16Z = new int[n];
+        local16Shift = shift;
+        for (int i = 0; i < n; i++) {
+            long[] v = vertices[i];
+            local16X[i] = Fixed16MatMath.scaleDown(v[0] - cx, shift);
+            local16Y[i] = Fixed16MatMath.scaleDown(v[1] - cy, shift);
+            local16Z[i] = Fixed16MatMath.scaleDown(v[2] - cz, shift);
+        }
+    }
+
+    private static void splitRange(int[] order, long[][] centers, int from, int to,
+            int maxPrimitives, Vector ranges) {
+        if (to - from <= maxPrimitives) {
+            ranges.addElement(new int[]{from, to});
+            return;
+        }
+        // Longest axis of the representative points
+        long[] min = new long[3];
+        long[] max = new long[3];
+        for (int k = 0; k < 3; k++) {
+            min[k] = centers[order[from]][k];
+            max[k] = min[k];
+        }
+        for (int i = from + 1; i < to; i++) {
+            long[] p = centers[order[i]];
+            for (int k = 0; k < 3; k++) {
+                if (p[k] < min[k]) {
+                    min[k] = p[k];
+                }
+                if (p[k] > max[k]) {
+                    max[k] = p[k];
+                }
+            }
+        }
+        int axis = 0;
+        if (max[1] - min[1] > max[axis] - min[axis]) {
+            axis = 1;
+        }
+        if (max[2] - min[2] > max[axis] - min[axis]) {
+            axis = 2;
+        }
+
+        // Shell sort the range along that axis, then cut at the median
+        for (int gap = (to - from) >> 1; gap > 0; gap >>= 1) {
+            for (int i = from + gap; i < to; i++) {
+                int item = order[i];
+                long key = centers[item][axis];
+                int j = i;
+                while (j - gap >= from && centers[order[j - gap]][axis] > key) {
+                    order[j] = order[j - gap];
+                    j -= gap;
+                }
+                order[j] = item;
+            }
+        }
+        int mid = (from + to) >> 1;
+        splitRange(order, centers, from, mid, maxPrimitives, ranges);
+        splitRange(order, centers, mid, to, maxPrimitives, ranges);
+    }
+
+    private void computeAabb(int from, int to, long[] min, long[] max) {
+        for (int k = 0; k < 3; k++) {
+            min[k] = vertices[from][k];
+            max[k] = vertices[from][k];
+        }
+        for (int i = from + 1; i < to; i++) {
+            long[] v = vertices[i];
+            for (int k = 0; k < 3; k++) {
+                if (v[k] < min[k]) {
+                    min[k] = v[k];
+                }
+                if (v[k] > max[k]) {
+                    max[k] = v[k];
+                }
+            }
+        }
+    }
+
+    /**
+     * Fits a sphere to vertices [from, to) and stores cx, cy, cz, r at out[offset].
+     * The result is the smaller of Ritter's approximation and the sphere
+     * around the range's AABB center, so it is never looser than the box allows.
+     */
+    private void fitSphere(int from, int to, long[] out, int offset) {
+        if (to <= from) {
+            out[offset] = 0;
+            out[offset + 1] = 0;
+            out[offset + 2] = 0;
+            out[offset + 3] = 0;
+            return;
+        }
+
+        // Ritter: start from the two mutually distant points y and z
+        long[] x = vertices[from];
+        long[] y = farthestFrom(from, to, x[0], x[1], x[2]);
+        long[] z = farthestFrom(from, to, y[0], y[1], y[2]);
+        long cx = y[0] + ((z[0] - y[0]) >> 1);
+        long cy = y[1] + ((z[1] - y[1]) >> 1);
+        long cz = y[2] + ((z[2] - y[2]) >> 1);
+        long r = length3(z[0] - y[0], z[1] - y[1], z[2] - y[2]) >> 1;
+
+        // Grow the sphere towards every point left outside
+        for (int i = from; i < to; i++) {
+            long[] p = vertices[i];
+            long d = length3(p[0] - cx, p[1] - cy, p[2] - cz);
+            if (d > r) {
+                long newR = (r + d) >> 1;
+                long ratioQ = FixedBaseMath.fixedDiv(d - newR, d);
+                cx += FixedBaseMath.fixedMul(p[0] - cx, ratioQ);
+                cy += FixedBaseMath.fixedMul(p[1] - cy, ratioQ);
+                cz += FixedBaseMath.fixedMul(p[2] - cz, ratioQ);
+                r = newR;
+            }
+        }
+        // Fixed-point rounding can leave a point marginally outside
+        r = maxDistance(from, to, cx, cy, cz, r);
+
+        // AABB-centered candidate
+        long[] min = new long[3];
+        long[] max = new long[3];
+        computeAabb(from, to, min, max);
+        long bx = min[0] + ((max[0] - min[0]) >> 1);
+        long by = min[1] + ((max[1] - min[1]) >> 1);
+        long bz = min[2] + ((max[2] - min[2]) >> 1);
+        long rb = maxDistance(from, to, bx, by, bz, 0);
+
+        if (rb < r) {
+            cx = bx;
+            cy = by;
+            cz = bz;
+            r = rb;
+        }
+        out[offset] = cx;
+        out[offset + 1] = cy;
+        out[offset + 2] = cz;
+        out[offset + 3] = r + 1;
+    }
+
+    private long[] farthestFrom(int from, int to, long px, long py, long pz) {
+        long[] best = vertices[from];
+        long bestD = -1;
+        for (int i = from; i < to; i++) {
+            long[] v = vertices[i];
+            long d = length3(v[0] - px, v[1] - py, v[2] - pz);
+            if (d > bestD) {
+                bestD = d;
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    private long maxDistance(int from, int to, long cx, long cy, long cz, long r) {
+        for (int i = from; i < to; i++) {
+            long[] v = vertices[i];
+            long d = length3(v[0] - cx, v[1] - cy, v[2] - cz);
+            if (d > r) {
+                r = d;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Length of (dx, dy, dz) in Q. Components are pre-shifted so the squares
+     * cannot overflow, which matters once models are baked to world scale.
+     */
+    static long length3(long dx, long dy, long dz) {
+        long ax = (dx < 0) ? -dx : dx;
+        long ay = (dy < 0) ? -dy : dy;
+        long az = (dz < 0) ? -dz : dz;
+        long m = ax | ay | az;
+        int s = 0;
+        while ((m >> s) >= (1L << 30)) {
+            s++;
+        }
+        ax >>= s;
+        ay >>= s;
+        az >>= s;
+        long sum = ax * ax + ay * ay + az * az;
+        return FixedBaseMath.sqrt(sum >> FixedBaseMath.FIXED_SHIFT) << s;
     }
 }
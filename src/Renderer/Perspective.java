@@ -2,57 +2,91 @@ package Renderer;
 
 import FixedMath.FixedMatMath;
 
+/**
+ * Projection parameters and their matrix. Setters only record the change;
+ * the matrix is rebuilt on the next getPerspectiveMatrix, and the version
+ * tells dependent caches (frustum planes and the like) when to refresh.
+ */
 public class Perspective {
-    private long[] perspectiveMatrix;
-    private long fovQ24_8;
+    private final long[] perspectiveMatrix = new long[16];
+    private long fovQ24_8; // vertical field of view in degrees
     private long aspectQ24_8;
     private long nearQ24_8;
     private long farQ24_8;
+    private boolean dirty = true;
+    private int version;
 
     public Perspective(long fovQ24_8, long aspectQ24_8, long nearQ24_8, long farQ24_8) {
         this.fovQ24_8 = fovQ24_8;
         this.aspectQ24_8 = aspectQ24_8;
         this.nearQ24_8 = nearQ24_8;
         this.farQ24_8 = farQ24_8;
-        if (perspectiveMatrix != null) {
-            FixedMatMath.releaseMatrix(perspectiveMatrix);
-        }
-        perspectiveMatrix = FixedMatMath.createPerspective4x4(fovQ24_8, aspectQ24_8, nearQ24_8, farQ24_8);
     }
 
+    /**
+     * The matrix belongs to this Perspective and is updated in place.
+     */
     public long[] getPerspectiveMatrix() {
+        if (dirty) {
+            FixedMatMath.setPerspective4x4(fovQ24_8, aspectQ24_8, nearQ24_8, farQ24_8, perspectiveMatrix);
+            dirty = false;
+        }
         return perspectiveMatrix;
     }
 
+    /**
+     * Changes whenever a parameter does.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public long getFov() {
+        return fovQ24_8;
+    }
+
+    public long getAspect() {
+        return aspectQ24_8;
+    }
+
+    public long getNear() {
+        return nearQ24_8;
+    }
+
+    public long getFar() {
+        return farQ24_8;
+    }
+
     public void setFov(long fovQ24_8) {
-        this.fovQ24_8 = fovQ24_8;
-        if (perspectiveMatrix != null) {
-            FixedMatMath.releaseMatrix(perspectiveMatrix);
+        if (this.fovQ24_8 != fovQ24_8) {
+            this.fovQ24_8 = fovQ24_8;
+            changed();
         }
-        perspectiveMatrix = FixedMatMath.createPerspective4x4(fovQ24_8, aspectQ24_8, nearQ24_8, farQ24_8);
     }
 
     public void setAspect(long aspectQ24_8) {
-        this.aspectQ24_8 = aspectQ24_8;
-        if (perspectiveMatrix != null) {
-            FixedMatMath.releaseMatrix(perspectiveMatrix);
+        if (this.aspectQ24_8 != aspectQ24_8) {
+            this.aspectQ24_8 = aspectQ24_8;
+            changed();
         }
-        perspectiveMatrix = FixedMatMath.createPerspective4x4(fovQ24_8, aspectQ24_8, nearQ24_8, farQ24_8);
     }
 
     public void setNear(long nearQ24_8) {
-        this.nearQ24_8 = nearQ24_8;
-        if (perspectiveMatrix != null) {
-            FixedMatMath.releaseMatrix(perspectiveMatrix);
+        if (this.nearQ24_8 != nearQ24_8) {
+            this.nearQ24_8 = nearQ24_8;
+            changed();
         }
-        perspectiveMatrix = FixedMatMath.createPerspective4x4(fovQ24_8, aspectQ24_8, nearQ24_8, farQ24_8);
     }
 
     public void setFar(long farQ24_8) {
-        this.farQ24_8 = farQ24_8;
-        if (perspectiveMatrix != null) {
-            FixedMatMath.releaseMatrix(perspectiveMatrix);
+        if (this.farQ24_8 != farQ24_8) {
+            this.farQ24_8 = farQ24_8;
+            changed();
         }
-        perspectiveMatrix = FixedMatMath.createPerspective4x4(fovQ24_8, aspectQ24_8, nearQ24_8, farQ24_8);
+    }
+
+    private void changed() {
+        dirty = true;
+        version++;
     }
 }
@@ -12,6 +12,11 @@ public final class RenderEffects {
     public static final int SHAPE_X = 2;
     public static final int SHAPE_S = 3;
 
+    // Framebuffer blend modes; colors reaching the kernels are premultiplied
+    public static final int BLEND_OPAQUE = 0; // overwrite, writes depth
+    public static final int BLEND_ADD = 1;    // saturating add, depth tested only
+    public static final int BLEND_ALPHA = 2;  // source over destination, depth tested only
+
     // Used for local alpha thresholds in your fade logic
     private static final int ALPHA_THRESHOLD_LOCAL_HIGH = 250;
     private static final int ALPHA_THRESHOLD_LOCAL_LOW = 50;
@@ -19,19 +24,21 @@ public final class RenderEffects {
     private RenderEffects() { }
 
     // ---------------------------------------------------------
-    // Depth-test pixel setting: NO BLENDING with background
+    // Depth-test pixel setting with the material's blend mode
     // ---------------------------------------------------------
 
     /**
      * Draws marker at (x, y), performing depth test with 'z'.
-     * If passes, overwrites the framebuffer pixel with 'color'.
+     * If passes, blends the premultiplied 'color' into the framebuffer.
      */
     public static void drawMarkerDepthTest(
             int shape,
+            int blendMode,
             int width,
             int height,
             int[] frameBuffer,
             long[] depthBuffer,
+            DepthTiles tiles,
             int x,
             int y,
             int color,
@@ -39,41 +46,44 @@ public final class RenderEffects {
     ) {
         switch (shape) {
             case SHAPE_P:
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x, y, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x, y, color, z);
                 break;
             case SHAPE_H:
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x, y, color, z);
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x, y + 1, color, z);
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x + 1, y, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x, y, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x, y + 1, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x + 1, y, color, z);
                 break;
             case SHAPE_X:
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x, y, color, z);
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x + 1, y - 1, color, z);
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x + 1, y + 1, color, z);
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x - 1, y + 1, color, z);
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x - 1, y - 1, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x, y, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x + 1, y - 1, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x + 1, y + 1, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x - 1, y + 1, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x - 1, y - 1, color, z);
                 break;
             case SHAPE_S:
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x, y, color, z);
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x, y + 1, color, z);
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x + 1, y, color, z);
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x + 1, y + 1, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x, y, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x, y + 1, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x + 1, y, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x + 1, y + 1, color, z);
                 break;
             default:
                 // default to single pixel
-                setPixelDepthTest(width, height, frameBuffer, depthBuffer, x, y, color, z);
+                setPixelDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles, x, y, color, z);
                 break;
         }
     }
 
     /**
-     * Write pixel if newZ < storedZ in the depth buffer. 
-     * No alpha blending is done; we simply overwrite the color.
+     * Write pixel if newZ < storedZ in the depth buffer. Opaque pixels
+     * overwrite color and depth; blended ones leave the depth untouched so
+     * translucent layers behind them still show.
      */
     private static void setPixelDepthTest(
+            int blendMode,
             int width, int height,
             int[] frameBuffer,
             long[] depthBuffer,
+            DepthTiles tiles,
             int px, int py,
             int color,
             long newZ
@@ -81,14 +91,174 @@ public final class RenderEffects {
         if (px < 0 || px >= width || py < 0 || py >= height) {
             return; // out of bounds
         }
+        // Coarse test first, the tile max is a small array
+        int t = tiles.tileIndex(px, py);
+        if (newZ >= tiles.tileMax[t]) {
+            SharedData.pixels_rejected++;
+            SharedData.pixels_rejected_coarse++;
+            return;
+        }
         int idx = py * width + px;
 
         // Depth test
         long oldZ = depthBuffer[idx];
         if (newZ < oldZ) {
-            depthBuffer[idx] = newZ;    // update stored depth
-            frameBuffer[idx] = color;   // overwrite color (no blending)
+            if (blendMode == BLEND_OPAQUE) {
+                depthBuffer[idx] = newZ;
+                frameBuffer[idx] = color | 0xFF000000;
+                tiles.noteWrite(t, px, py, oldZ);
+            } else {
+                frameBuffer[idx] = blend(blendMode, frameBuffer[idx], color);
+            }
+            SharedData.pixels_written++;
+        } else {
+            SharedData.pixels_rejected++;
+        }
+    }
+
+    /**
+     * Depth-tested run of 'length' pixels from (x, y), downwards if vertical,
+     * otherwise to the right, all at depth z. Clipped once, not per pixel,
+     * and tested against the tile max once per tile it crosses.
+     */
+    public static void drawSpanDepthTest(
+            int blendMode,
+            int width, int height,
+            int[] frameBuffer,
+            long[] depthBuffer,
+            DepthTiles tiles,
+            int x, int y,
+            int length,
+            boolean vertical,
+            int color,
+            long z
+    ) {
+        int from, to, idx, stride;
+        if (vertical) {
+            if (x < 0 || x >= width) {
+                return;
+            }
+            from = Math.max(y, 0);
+            to = Math.min(y + length, height);
+            idx = from * width + x;
+            stride = width;
+        } else {
+            if (y < 0 || y >= height) {
+                return;
+            }
+            from = Math.max(x, 0);
+            to = Math.min(x + length, width);
+            idx = y * width + from;
+            stride = 1;
+        }
+        boolean opaque = blendMode == BLEND_OPAQUE;
+        int written = 0;
+        int rejected = 0;
+        int rejectedCoarse = 0;
+        long[] tileMax = tiles.tileMax;
+        int i = from;
+        while (i < to) {
+            // One tile test per run of the span inside a tile
+            int runEnd = Math.min(((i >> DepthTiles.TILE_SHIFT) + 1) << DepthTiles.TILE_SHIFT, to);
+            int t = vertical ? tiles.tileIndex(x, i) : tiles.tileIndex(i, y);
+            if (z >= tileMax[t]) {
+                rejectedCoarse += runEnd - i;
+                idx += (runEnd - i) * stride;
+                i = runEnd;
+                continue;
+            }
+            for (; i < runEnd; i++, idx += stride) {
+                long oldZ = depthBuffer[idx];
+                if (z < oldZ) {
+                    if (opaque) {
+                        depthBuffer[idx] = z;
+                        frameBuffer[idx] = color | 0xFF000000;
+                        int px = vertical ? x : i;
+                        int py = vertical ? i : y;
+                        tiles.noteWrite(t, px, py, oldZ);
+                    } else {
+                        frameBuffer[idx] = blend(blendMode, frameBuffer[idx], color);
+                    }
+                    written++;
+                } else {
+                    rejected++;
+                }
+            }
+        }
+        SharedData.pixels_written += written;
+        SharedData.pixels_rejected += rejected + rejectedCoarse;
+        SharedData.pixels_rejected_coarse += rejectedCoarse;
+    }
+
+    /**
+     * Square of size x size pixels centered on (x, y), as horizontal spans.
+     */
+    public static void drawBlockDepthTest(
+            int blendMode,
+            int width, int height,
+            int[] frameBuffer,
+            long[] depthBuffer,
+            DepthTiles tiles,
+            int x, int y,
+            int size,
+            int color,
+            long z
+    ) {
+        int offset = (size - 1) >> 1;
+        int left = x - offset;
+        int top = y - offset;
+        for (int row = 0; row < size; row++) {
+            drawSpanDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles,
+                    left, top + row, size, false, color, z);
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Packed-channel color math: R and B are scaled together in one
+    // multiply, G in another
+    // ---------------------------------------------------------
+
+    /**
+     * Scales RGB by the color's own alpha, keeping the alpha byte.
+     */
+    public static int premultiply(int argb) {
+        int a = argb >>> 24;
+        int scale = a + (a >> 7); // 0..256
+        int rb = (((argb & 0xFF00FF) * scale) >>> 8) & 0xFF00FF;
+        int g = (((argb & 0x00FF00) * scale) >>> 8) & 0x00FF00;
+        return (argb & 0xFF000000) | rb | g;
+    }
+
+    /**
+     * Scales all four channels of a premultiplied color by factor/255.
+     */
+    public static int scale(int argb, int factor) {
+        int f = factor + (factor >> 7); // 0..256
+        int ag = (((argb >>> 8) & 0xFF00FF) * f) & 0xFF00FF00;
+        int rb = (((argb & 0xFF00FF) * f) >>> 8) & 0xFF00FF;
+        return ag | rb;
+    }
+
+    /**
+     * Blends a premultiplied source into an opaque destination pixel.
+     */
+    public static int blend(int blendMode, int dst, int src) {
+        if (blendMode == BLEND_ADD) {
+            int rb = (dst & 0xFF00FF) + (src & 0xFF00FF);
+            int g = (dst & 0x00FF00) + (src & 0x00FF00);
+            // Carry bits become all-ones in the channel that overflowed
+            int carry = rb & 0x1000100;
+            rb = (rb | (carry - (carry >>> 8))) & 0xFF00FF;
+            carry = g & 0x10000;
+            g = (g | (carry - (carry >>> 8))) & 0x00FF00;
+            return 0xFF000000 | rb | g;
         }
+        // Source over: src + dst * (1 - alpha)
+        int a = src >>> 24;
+        int inv = 256 - (a + (a >> 7));
+        int rb = ((((dst & 0xFF00FF) * inv) >>> 8) & 0xFF00FF) + (src & 0xFF00FF);
+        int g = ((((dst & 0x00FF00) * inv) >>> 8) & 0x00FF00) + (src & 0x00FF00);
+        return 0xFF000000 | rb | g;
     }
 
     // ---------------------------------------------------------
@@ -197,6 +367,36 @@ public final class RenderEffects {
         return ratioQToAlpha(invRatioQ);
     }
 
+    /**
+     * Same ramp as computeLocalAlphaFromCameraSpace, with the division
+     * hoisted into alphaScaleQ = localAlphaScale(boundingRadiusQ).
+     */
+    public static int computeLocalAlphaScaled(long vertexCamZ, long centerCamZ,
+            long boundingRadiusQ, long alphaScaleQ) {
+        long localZ = vertexCamZ - centerCamZ;
+        long R = boundingRadiusQ;
+        if (localZ < -R) {
+            localZ = -R;
+        } else if (localZ > R) {
+            localZ = R;
+        }
+        int alphaI = FixedBaseMath.toInt(FixedBaseMath.fixedMul(R - localZ, alphaScaleQ));
+        if (alphaI < ALPHA_THRESHOLD_LOCAL_LOW) {
+            alphaI = ALPHA_THRESHOLD_LOCAL_LOW;
+        }
+        if (alphaI > ALPHA_THRESHOLD_LOCAL_HIGH) {
+            alphaI = 255;
+        }
+        return alphaI;
+    }
+
+    public static long localAlphaScale(long boundingRadiusQ) {
+        if (boundingRadiusQ <= 0) {
+            return 0;
+        }
+        return FixedBaseMath.fixedDiv(FixedBaseMath.FIXED225, boundingRadiusQ << 1);
+    }
+
     public static int ratioQToAlpha(long ratioQ) {
         long alphaQ = FixedBaseMath.fixedMul(ratioQ, FixedBaseMath.FIXED225);
         int alphaI = FixedBaseMath.toInt(alphaQ);
@@ -2,17 +2,24 @@ package Renderer;
 
 public class RenderLine {
 
-    private static final byte[][] DITHER_2X2 = {
+    // Line kernels, selected per material by Material.update()
+    public static final int KERNEL_PIXEL = 0;  // single pixel, no dithering
+    public static final int KERNEL_MARKER = 1; // marker shape per step
+    public static final int KERNEL_DITHER = 2; // ordered dithering, any shape
+    public static final int KERNEL_WIDE = 3;   // spans of primitiveWidth pixels per step
+    public static final int KERNEL_WU = 4;     // anti-aliased, two weighted pixels per step
+
+    static final byte[][] DITHER_2X2 = {
         {0, 2},
         {3, 1}
     };
-    private static final byte[][] DITHER_4X4 = {
+    static final byte[][] DITHER_4X4 = {
         {0, 8, 2, 10},
         {12, 4, 14, 6},
         {3, 11, 1, 9},
         {15, 7, 13, 5}
     };
-    private static final byte[][] DITHER_8X8 = {
+    static final byte[][] DITHER_8X8 = {
         {0, 32, 8, 40, 2, 34, 10, 42},
         {48,16,56,24,50,18,58, 26},
         {12,44, 4,36,14,46, 6, 38},
@@ -27,118 +34,498 @@ public class RenderLine {
         return (v < 0) ? -v : v;
     }
 
+    // Color ramp for the kernel being set up: channels a, r, g, b in 8.16 at
+    // [0..3] and their per-step increments at [4..7]. Kernels copy it to
+    // locals right away; rendering runs on one thread.
+    private static final int[] ramp = new int[8];
+
+    /**
+     * Loads ramp to go from color0 to color1 in 'steps' steps, starting half
+     * a step in so each channel rounds instead of truncating.
+     */
+    private static void setupRamp(int color0, int color1, int steps) {
+        int ca = ((color0 >>> 8) & 0xFF0000) | 0x8000;
+        int cr = (color0 & 0xFF0000) | 0x8000;
+        int cg = ((color0 << 8) & 0xFF0000) | 0x8000;
+        int cb = ((color0 << 16) & 0xFF0000) | 0x8000;
+        ramp[0] = ca;
+        ramp[1] = cr;
+        ramp[2] = cg;
+        ramp[3] = cb;
+        ramp[4] = (((color1 >>> 8) & 0xFF0000) - (ca & 0xFF0000)) / steps;
+        ramp[5] = ((color1 & 0xFF0000) - (cr & 0xFF0000)) / steps;
+        ramp[6] = (((color1 << 8) & 0xFF0000) - (cg & 0xFF0000)) / steps;
+        ramp[7] = (((color1 << 16) & 0xFF0000) - (cb & 0xFF0000)) / steps;
+    }
+
     /**
-     * Draw a line with optional dithering, *and* do depth test.
+     * Draw a line with depth test, using the kernel and dither state
+     * prepared on the material. The premultiplied ARGB color is interpolated
+     * from color0 to color1 with one add per channel per pixel.
      *
      * @param z0 the camera‐space Z of (x0, y0)
      * @param z1 the camera‐space Z of (x1, y1)
      */
-    public static void drawLineDither(
-            int shape,
+    public static void drawLine(
+            Material mat,
             int width, int height,
             int[] frameBuffer,
             long[] depthBuffer,
+            DepthTiles tiles,
             int x0, int y0, long z0,
             int x1, int y1, long z1,
-            int color,
-            int ditherSize
+            int color0, int color1
     ) {
-        int alpha = (color >>> 24) & 0xFF;
-        // If final alpha is 0, skip
-        if (alpha == 0) {
+        // If both ends are fully faded, skip
+        if ((color0 >>> 24) == 0 && (color1 >>> 24) == 0) {
+            return;
+        }
+        int shape = mat.primitiveShape;
+
+        // Single point? Keep the nearer end's color
+        if (x0 == x1 && y0 == y1) {
+            RenderVertex.drawVertex(shape, mat.blendMode,
+                (mat.lineKernel == KERNEL_WIDE) ? mat.primitiveWidth : 1,
+                width, height, frameBuffer, depthBuffer, tiles, x0, y0,
+                Math.min(z0, z1), (z0 <= z1) ? color0 : color1);
             return;
         }
 
+        switch (mat.lineKernel) {
+            case KERNEL_PIXEL:
+                drawLinePixel(mat.blendMode, width, height, frameBuffer, depthBuffer, tiles,
+                        x0, y0, z0, x1, y1, z1, color0, color1);
+                break;
+            case KERNEL_MARKER:
+                drawLineMarker(shape, mat.blendMode, width, height, frameBuffer, depthBuffer, tiles,
+                        x0, y0, z0, x1, y1, z1, color0, color1);
+                break;
+            case KERNEL_WU:
+                drawLineWu(mat.blendMode, width, height,
+                        frameBuffer, depthBuffer, tiles,
+                        x0, y0, z0, x1, y1, z1, color0, color1);
+                break;
+            case KERNEL_WIDE:
+                drawLineWide(mat.primitiveWidth, mat.blendMode, width, height,
+                        frameBuffer, depthBuffer, tiles,
+                        x0, y0, z0, x1, y1, z1, color0, color1);
+                break;
+            default:
+                // After shift, coverage is 0 at both ends => skip
+                if (((color0 >>> 24) >>> mat.coverageShift) == 0
+                        && ((color1 >>> 24) >>> mat.coverageShift) == 0) {
+                    return;
+                }
+                drawLineDithered(shape, mat.blendMode, width, height, frameBuffer, depthBuffer, tiles,
+                        x0, y0, z0, x1, y1, z1, color0, color1,
+                        mat.ditherRows, mat.ditherRowShift, mat.ditherMask, mat.coverageShift);
+                break;
+        }
+    }
+
+    /**
+     * Bresenham with the single-pixel depth test inlined. On entering a tile
+     * the nearest depth the line can reach inside it is tested against the
+     * tile's max, and a hidden span is skipped without touching the depth buffer.
+     */
+    private static void drawLinePixel(
+            int blendMode,
+            int width, int height,
+            int[] frameBuffer,
+            long[] depthBuffer,
+            DepthTiles tiles,
+            int x0, int y0, long z0,
+            int x1, int y1, long z1,
+            int color0, int color1
+    ) {
         // Bresenham setup
         int dx = iabs(x1 - x0);
         int sx = (x0 < x1) ? 1 : -1;
         int dy = -iabs(y1 - y0);
         int sy = (y0 < y1) ? 1 : -1;
         int err = dx + dy; // error term
+        int steps = Math.max(dx, -dy); // Bresenham takes one step per major-axis pixel
 
-        // We'll do a simple integer step count
-        int steps = dx + iabs(dy);
-        if (steps == 0) {
-            // Single point?
-            RenderEffects.drawMarkerDepthTest(shape, width, height,
-                frameBuffer, depthBuffer, x0, y0, color, z0);
-            return;
+        // Interpolate Z and color from the first to the last pixel
+        long zCurrent = z0;
+        long zStep = (z1 - z0) / steps;
+
+        boolean gradient = color0 != color1;
+        int color = color0;
+        setupRamp(color0, color1, steps);
+        int ca = ramp[0], cr = ramp[1], cg = ramp[2], cb = ramp[3];
+        int sa = ramp[4], sr = ramp[5], sg = ramp[6], sb = ramp[7];
+
+        boolean opaque = blendMode == RenderEffects.BLEND_OPAQUE;
+        int written = 0;
+        int rejected = 0;
+        int rejectedCoarse = 0;
+
+        // At most TILE_SIZE steps fall inside one tile
+        long spanReach = (zStep < 0) ? zStep * (DepthTiles.TILE_SIZE - 1) : 0;
+        long[] tileMax = tiles.tileMax;
+        int tile = -1;
+        boolean tileHidden = false;
+
+        while (true) {
+            if (x0 >= 0 && x0 < width && y0 >= 0 && y0 < height) {
+                int t = tiles.tileIndex(x0, y0);
+                if (t != tile) {
+                    tile = t;
+                    tileHidden = zCurrent + spanReach >= tileMax[t];
+                }
+                if (tileHidden) {
+                    rejectedCoarse++;
+                } else {
+                    int idx = y0 * width + x0;
+                    long oldZ = depthBuffer[idx];
+                    if (zCurrent < oldZ) {
+                        if (opaque) {
+                            depthBuffer[idx] = zCurrent;
+                            frameBuffer[idx] = color | 0xFF000000;
+                            tiles.noteWrite(t, x0, y0, oldZ);
+                        } else {
+                            frameBuffer[idx] = RenderEffects.blend(blendMode, frameBuffer[idx], color);
+                        }
+                        written++;
+                    } else {
+                        rejected++;
+                    }
+                }
+            }
+
+            if (x0 == x1 && y0 == y1) {
+                break;
+            }
+
+            int e2 = 2 * err;
+            if (e2 >= dy) {
+                err += dy;
+                x0  += sx;
+            }
+            if (e2 <= dx) {
+                err += dx;
+                y0  += sy;
+            }
+            zCurrent += zStep;
+            if (gradient) {
+                ca += sa;
+                cr += sr;
+                cg += sg;
+                cb += sb;
+                color = ((ca & 0xFF0000) << 8) | (cr & 0xFF0000)
+                        | ((cg & 0xFF0000) >>> 8) | (cb >>> 16);
+            }
         }
+        SharedData.pixels_written += written;
+        SharedData.pixels_rejected += rejected + rejectedCoarse;
+        SharedData.pixels_rejected_coarse += rejectedCoarse;
+    }
+
+    /**
+     * Xiaolin Wu's line in 16.16 fixed point. Each major-axis step covers the
+     * two pixels straddling the exact minor coordinate, weighted by distance,
+     * and blends the premultiplied color scaled by that coverage. Opaque
+     * materials write depth only for the pixel holding the larger share.
+     */
+    private static void drawLineWu(
+            int blendMode,
+            int width, int height,
+            int[] frameBuffer,
+            long[] depthBuffer,
+            DepthTiles tiles,
+            int x0, int y0, long z0,
+            int x1, int y1, long z1,
+            int color0, int color1
+    ) {
+        boolean steep = iabs(y1 - y0) > iabs(x1 - x0);
+        int major = steep ? y0 : x0;
+        int majorEnd = steep ? y1 : x1;
+        int steps = iabs(majorEnd - major);
+        int majorStep = (majorEnd > major) ? 1 : -1;
+        int minorDelta = steep ? (x1 - x0) : (y1 - y0);
+        // 48.16, since an endpoint near the camera plane can project far
+        // beyond the 32767 pixels a 16.16 int holds
+        long minor = (long) (steep ? x0 : y0) << 16;
+        long minorStep = ((long) minorDelta << 16) / steps;
 
-        // Interpolate Z from z0 to z1
         long zCurrent = z0;
-        long zStep = 0;
-        if (steps != 0) {
-            zStep = (z1 - z0) / steps;
-        }
+        long zStep = (z1 - z0) / steps;
 
-        // For dithering
-        int coverageShift;
-        byte[][] ditherMatrix;
-        int mask;
+        boolean gradient = color0 != color1;
+        int color = color0;
+        setupRamp(color0, color1, steps);
+        int ca = ramp[0], cr = ramp[1], cg = ramp[2], cb = ramp[3];
+        int sa = ramp[4], sr = ramp[5], sg = ramp[6], sb = ramp[7];
 
-        switch (ditherSize) {
-            case 2:
-                coverageShift = 6;
-                ditherMatrix = DITHER_2X2;
-                mask = 1;
-                break;
-            case 4:
-                coverageShift = 4;
-                ditherMatrix = DITHER_4X4;
-                mask = 3;
-                break;
-            case 8:
-                coverageShift = 2;
-                ditherMatrix = DITHER_8X8;
-                mask = 7;
-                break;
-            default:
-                coverageShift = 0;
-                ditherMatrix = null;
-                mask = 0;
-                break;
+        // Walk only the steps whose major coordinate is on screen
+        int majorSize = steep ? height : width;
+        int first = (majorStep > 0) ? -major : major - (majorSize - 1);
+        int last = (majorStep > 0) ? (majorSize - 1) - major : major;
+        if (first < 0) {
+            first = 0;
+        }
+        if (last > steps) {
+            last = steps;
+        }
+        if (first > last) {
+            return;
+        }
+        if (first > 0) {
+            major += majorStep * first;
+            minor += minorStep * first;
+            zCurrent += zStep * first;
+            if (gradient) {
+                ca += sa * first;
+                cr += sr * first;
+                cg += sg * first;
+                cb += sb * first;
+                color = ((ca & 0xFF0000) << 8) | (cr & 0xFF0000)
+                        | ((cg & 0xFF0000) >>> 8) | (cb >>> 16);
+            }
         }
 
-        // If no dithering:
-        if (ditherSize == 0) {
-            while (true) {
-                RenderEffects.drawMarkerDepthTest(shape, width, height,
-                        frameBuffer, depthBuffer, x0, y0, color, zCurrent);
+        // Coverage is applied by scaling the source, then blending it over
+        int coverMode = (blendMode == RenderEffects.BLEND_ADD)
+                ? RenderEffects.BLEND_ADD : RenderEffects.BLEND_ALPHA;
+        boolean opaque = blendMode == RenderEffects.BLEND_OPAQUE;
 
-                if (x0 == x1 && y0 == y1) {
-                    break;
-                }
+        for (int i = first; i <= last; i++) {
+            int m = (int) (minor >> 16);
+            int frac = (int) (minor >> 8) & 0xFF;
+            int cover = 255 - frac;
+            if (steep) {
+                plotCoverage(coverMode, opaque && frac < 128, width, height, frameBuffer, depthBuffer,
+                        tiles, m, major, color, cover, zCurrent);
+                plotCoverage(coverMode, opaque && frac >= 128, width, height, frameBuffer, depthBuffer,
+                        tiles, m + 1, major, color, frac, zCurrent);
+            } else {
+                plotCoverage(coverMode, opaque && frac < 128, width, height, frameBuffer, depthBuffer,
+                        tiles, major, m, color, cover, zCurrent);
+                plotCoverage(coverMode, opaque && frac >= 128, width, height, frameBuffer, depthBuffer,
+                        tiles, major, m + 1, color, frac, zCurrent);
+            }
 
-                int e2 = 2 * err;
-                if (e2 >= dy) {
-                    err += dy;
-                    x0  += sx;
-                }
-                if (e2 <= dx) {
-                    err += dx;
-                    y0  += sy;
-                }
-                zCurrent += zStep;
+            major += majorStep;
+            minor += minorStep;
+            zCurrent += zStep;
+            if (gradient) {
+                ca += sa;
+                cr += sr;
+                cg += sg;
+                cb += sb;
+                color = ((ca & 0xFF0000) << 8) | (cr & 0xFF0000)
+                        | ((cg & 0xFF0000) >>> 8) | (cb >>> 16);
             }
-            return;
         }
+    }
 
-        // With dithering:
-        int coverage = alpha >>> coverageShift;
-        if (coverage == 0) {
-            // After shift, coverage is 0 => skip
+    /**
+     * One Wu sample: tile and depth test, then blend color scaled by cover (0..255).
+     */
+    private static void plotCoverage(
+            int coverMode,
+            boolean writeDepth,
+            int width, int height,
+            int[] frameBuffer,
+            long[] depthBuffer,
+            DepthTiles tiles,
+            int x, int y,
+            int color,
+            int cover,
+            long z
+    ) {
+        if (cover == 0 || x < 0 || x >= width || y < 0 || y >= height) {
+            return;
+        }
+        int t = tiles.tileIndex(x, y);
+        if (z >= tiles.tileMax[t]) {
+            SharedData.pixels_rejected++;
+            SharedData.pixels_rejected_coarse++;
+            return;
+        }
+        int idx = y * width + x;
+        long oldZ = depthBuffer[idx];
+        if (z >= oldZ) {
+            SharedData.pixels_rejected++;
             return;
         }
+        frameBuffer[idx] = RenderEffects.blend(coverMode, frameBuffer[idx],
+                RenderEffects.scale(color, cover));
+        if (writeDepth) {
+            depthBuffer[idx] = z;
+            tiles.noteWrite(t, x, y, oldZ);
+        }
+        SharedData.pixels_written++;
+    }
+
+    /**
+     * Width-N line: Bresenham along the major axis, emitting a span of
+     * lineWidth pixels across it per step at one interpolated depth.
+     */
+    private static void drawLineWide(
+            int lineWidth,
+            int blendMode,
+            int width, int height,
+            int[] frameBuffer,
+            long[] depthBuffer,
+            DepthTiles tiles,
+            int x0, int y0, long z0,
+            int x1, int y1, long z1,
+            int color0, int color1
+    ) {
+        int dx = iabs(x1 - x0);
+        int sx = (x0 < x1) ? 1 : -1;
+        int dy = -iabs(y1 - y0);
+        int sy = (y0 < y1) ? 1 : -1;
+        int err = dx + dy;
+        int steps = Math.max(dx, -dy); // Bresenham takes one step per major-axis pixel
+
+        long zCurrent = z0;
+        long zStep = (z1 - z0) / steps;
+
+        boolean gradient = color0 != color1;
+        int color = color0;
+        setupRamp(color0, color1, steps);
+        int ca = ramp[0], cr = ramp[1], cg = ramp[2], cb = ramp[3];
+        int sa = ramp[4], sr = ramp[5], sg = ramp[6], sb = ramp[7];
+
+        // X-major lines get vertical spans, Y-major ones horizontal spans
+        boolean vertical = dx >= -dy;
+        int offset = (lineWidth - 1) >> 1;
+
+        while (true) {
+            if (vertical) {
+                RenderEffects.drawSpanDepthTest(blendMode, width, height,
+                        frameBuffer, depthBuffer, tiles,
+                        x0, y0 - offset, lineWidth, true, color, zCurrent);
+            } else {
+                RenderEffects.drawSpanDepthTest(blendMode, width, height,
+                        frameBuffer, depthBuffer, tiles,
+                        x0 - offset, y0, lineWidth, false, color, zCurrent);
+            }
+
+            if (x0 == x1 && y0 == y1) {
+                break;
+            }
+
+            int e2 = 2 * err;
+            if (e2 >= dy) {
+                err += dy;
+                x0  += sx;
+            }
+            if (e2 <= dx) {
+                err += dx;
+                y0  += sy;
+            }
+            zCurrent += zStep;
+            if (gradient) {
+                ca += sa;
+                cr += sr;
+                cg += sg;
+                cb += sb;
+                color = ((ca & 0xFF0000) << 8) | (cr & 0xFF0000)
+                        | ((cg & 0xFF0000) >>> 8) | (cb >>> 16);
+            }
+        }
+    }
+
+    private static void drawLineMarker(
+            int shape,
+            int blendMode,
+            int width, int height,
+            int[] frameBuffer,
+            long[] depthBuffer,
+            DepthTiles tiles,
+            int x0, int y0, long z0,
+            int x1, int y1, long z1,
+            int color0, int color1
+    ) {
+        int dx = iabs(x1 - x0);
+        int sx = (x0 < x1) ? 1 : -1;
+        int dy = -iabs(y1 - y0);
+        int sy = (y0 < y1) ? 1 : -1;
+        int err = dx + dy;
+        int steps = Math.max(dx, -dy); // Bresenham takes one step per major-axis pixel
+
+        long zCurrent = z0;
+        long zStep = (z1 - z0) / steps;
+
+        boolean gradient = color0 != color1;
+        int color = color0;
+        setupRamp(color0, color1, steps);
+        int ca = ramp[0], cr = ramp[1], cg = ramp[2], cb = ramp[3];
+        int sa = ramp[4], sr = ramp[5], sg = ramp[6], sb = ramp[7];
+
+        while (true) {
+            RenderEffects.drawMarkerDepthTest(shape, blendMode, width, height,
+                    frameBuffer, depthBuffer, tiles, x0, y0, color, zCurrent);
+
+            if (x0 == x1 && y0 == y1) {
+                break;
+            }
+
+            int e2 = 2 * err;
+            if (e2 >= dy) {
+                err += dy;
+                x0  += sx;
+            }
+            if (e2 <= dx) {
+                err += dx;
+                y0  += sy;
+            }
+            zCurrent += zStep;
+            if (gradient) {
+                ca += sa;
+                cr += sr;
+                cg += sg;
+                cb += sb;
+                color = ((ca & 0xFF0000) << 8) | (cr & 0xFF0000)
+                        | ((cg & 0xFF0000) >>> 8) | (cb >>> 16);
+            }
+        }
+    }
+
+    private static void drawLineDithered(
+            int shape,
+            int blendMode,
+            int width, int height,
+            int[] frameBuffer,
+            long[] depthBuffer,
+            DepthTiles tiles,
+            int x0, int y0, long z0,
+            int x1, int y1, long z1,
+            int color0, int color1,
+            int[] ditherRows,
+            int rowShift,
+            int mask,
+            int coverageShift
+    ) {
+        int dx = iabs(x1 - x0);
+        int sx = (x0 < x1) ? 1 : -1;
+        int dy = -iabs(y1 - y0);
+        int sy = (y0 < y1) ? 1 : -1;
+        int err = dx + dy;
+        int steps = Math.max(dx, -dy); // Bresenham takes one step per major-axis pixel
+
+        long zCurrent = z0;
+        long zStep = (z1 - z0) / steps;
+
+        boolean gradient = color0 != color1;
+        int color = color0;
+        setupRamp(color0, color1, steps);
+        int ca = ramp[0], cr = ramp[1], cg = ramp[2], cb = ramp[3];
+        int sa = ramp[4], sr = ramp[5], sg = ramp[6], sb = ramp[7];
+        int coverage = (color0 >>> 24) >>> coverageShift;
 
         while (true) {
             // Dither check
             if (x0 >= 0 && x0 < width && y0 >= 0 && y0 < height) {
-                int threshold = ditherMatrix[y0 & mask][x0 & mask];
-                if (coverage > (threshold - 1)) {
+                int rowBits = ditherRows[(coverage << rowShift) | (y0 & mask)];
+                if (((rowBits >>> (x0 & mask)) & 1) != 0) {
                     RenderEffects.drawMarkerDepthTest(
-                            shape, width, height,
-                            frameBuffer, depthBuffer,
+                            shape, blendMode, width, height,
+                            frameBuffer, depthBuffer, tiles,
                             x0, y0, color, zCurrent
                     );
                 }
@@ -158,6 +545,15 @@ public class RenderLine {
                 y0 += sy;
             }
             zCurrent += zStep;
+            if (gradient) {
+                ca += sa;
+                cr += sr;
+                cg += sg;
+                cb += sb;
+                color = ((ca & 0xFF0000) << 8) | (cr & 0xFF0000)
+                        | ((cg & 0xFF0000) >>> 8) | (cb >>> 16);
+                coverage = (ca >>> 16) >>> coverageShift;
+            }
         }
     }
 }
@@ -4,18 +4,27 @@ public class RenderVertex {
 
     /**
      * Draw a single 'vertex' shape at (x, y) with given color and depth test.
+     * Sizes above one draw a size x size block instead of the marker shape.
      */
     public static void drawVertex(
             int shape,
+            int blendMode,
+            int size,
             int width,
             int height,
             int[] frameBuffer,
             long[] depthBuffer,
+            DepthTiles tiles,
             int x,
             int y,
             long z,
             int color
     ) {
-        RenderEffects.drawMarkerDepthTest(shape, width, height, frameBuffer, depthBuffer, x, y, color, z);
+        if (size > 1) {
+            RenderEffects.drawBlockDepthTest(blendMode, width, height, frameBuffer, depthBuffer, tiles,
+                    x, y, size, color, z);
+            return;
+        }
+        RenderEffects.drawMarkerDepthTest(shape, blendMode, width, height, frameBuffer, depthBuffer, tiles, x, y, color, z);
     }
 }
@@ -3,6 +3,7 @@ package Renderer;
 import javax.microedition.lcdui.Graphics;
 import FixedMath.FixedMatMath;
 import FixedMath.FixedBaseMath;
+import FixedMath.Fixed16MatMath;
 import java.util.Vector;
 import Constants.Common;
 
@@ -30,16 +31,67 @@ public class Renderer {
     // The new depth buffer, storing camera-space Z in fixed point
     private long[] depthBuffer;
 
-    private long[] origin;
-    private long[] centerCam;
+    // Farthest depth per 8x8 tile, for rejecting spans and whole objects
+    private DepthTiles tiles;
+
+    // The depth buffer holds keys ((MAX_GENERATION - generation) << DEPTH_Z_BITS)
+    // | (z + DEPTH_Z_BIAS), with z clamped to the field. Keys left from an
+    // older generation compare farther than any key of the current one.
+    public static final int DEPTH_Z_BITS = 44;
+    public static final int MAX_GENERATION = (1 << (63 - DEPTH_Z_BITS)) - 1;
+    private static final long DEPTH_Z_BIAS = 1L << (DEPTH_Z_BITS - 1);
+    private static final long DEPTH_Z_MAX = (1L << DEPTH_Z_BITS) - 1;
+    private int depthGeneration;
+    private long depthKeyBase = (long) MAX_GENERATION << DEPTH_Z_BITS;
+
+    // Persistence: instead of clearing, scale each channel through decayLut
+    // every decayInterval frames; 0 disables
+    private int decayInterval;
+    private int[] decayLut;
+    private int frameCount;
+
+    private long[] centerCam = new long[4];
 
     // Scratch arrays for transformations
-    private long[] scratch3a = new long[3];
-    private long[] scratch3b = new long[3];
     private long[] scratch4a = new long[4];
-    private long[] scratch4b = new long[4];
     private int[] reusableScreenCoords0 = new int[3];
     private int[] reusableScreenCoords1 = new int[3];
+    private long[] clusterCenter = new long[3];
+    private long[] relModel = new long[16];
+
+    // Clip coordinates and outcodes of the current object's vertices, filled
+    // one cluster at a time by transformCluster and indexed like its vertices
+    private long[] clipX = new long[0];
+    private long[] clipY = new long[0];
+    private long[] clipZ = new long[0];
+    private long[] clipW = new long[0];
+    private int[] clipCodes = new int[0];
+
+    // Int transform path for the current object: the linear part of its
+    // model-view matrix as block-scaled terms and the camera-space model
+    // center in Q
+    private int[] view16 = new int[9];
+    private int view16Shift;
+    private long[] camCenter = new long[3];
+    private boolean int16Ready;
+
+    private long[] perspective; // createPerspective4x4 matrix, applied after the affine model-view
+    private long[] camPoint = new long[3];
+
+    private Frustum frustum;
+
+    // Render queue, rebuilt each frame from the renderables
+    private SceneObject[] queue = new SceneObject[16];
+    private int queueSize;
+
+    // Per-material state, hoisted once per batch by bindMaterial()
+    private Material boundMaterial;
+    private long batchNearQ;
+    private long batchFarQ;
+    private int[] batchShadeLut;
+    private int batchShadeShift;
+    private long batchExactBelow;
+    private int batchShape;
 
     public Renderer() {
         this.width = SharedData.display_width;
@@ -48,6 +100,12 @@ public class Renderer {
         this.frameBuffer = new int[width * height];
         // Create the depth buffer, same size
         this.depthBuffer = new long[width * height];
+        this.tiles = new DepthTiles(width, height, depthBuffer);
+        // Clears are skipped or partial from here on, so start from a clean frame
+        for (int i = 0; i < frameBuffer.length; i++) {
+            frameBuffer[i] = BACKGROUND_COLOR;
+        }
+        clearDepth();
 
         this.renderables = new Vector();
 
@@ -67,244 +125,451 @@ public class Renderer {
     }
 
     /**
-     * Clear color and depth buffers
+     * Keeps the previous frames as fading trails instead of clearing.
+     *
+     * @param decay    per-channel factor applied on each decay pass, 0..255 (/256)
+     * @param interval frames between decay passes, 0 turns persistence off
+     */
+    public void setPersistence(int decay, int interval) {
+        decayInterval = interval;
+        if (interval <= 0) {
+            return;
+        }
+        if (decayLut == null) {
+            decayLut = new int[256];
+        }
+        for (int c = 0; c < 256; c++) {
+            decayLut[c] = (c * decay) >> 8;
+        }
+    }
+
+    /**
+     * Clear the color buffer, or decay it with persistence on. Depth is
+     * retired by bumping the generation; the buffer itself is only refilled
+     * once every 2^(63 - DEPTH_Z_BITS) frames, when the tag wraps.
      */
     public void clearBuffers(Graphics g) {
-        g.setColor(BACKGROUND_COLOR);
-        g.fillRect(0, 0, width, height);
+        // The opaque framebuffer upload covers the whole canvas, no fillRect needed
+        if (decayInterval > 0) {
+            if (++frameCount >= decayInterval) {
+                frameCount = 0;
+                decayFrameBuffer();
+            }
+        } else {
+            // Reset frameBuffer
+            for (int i = 0; i < frameBuffer.length; i++) {
+                frameBuffer[i] = BACKGROUND_COLOR;
+            }
+        }
+        nextDepthGeneration();
+        tiles.clear(depthKeyBase + DEPTH_Z_MAX + 1);
+
+        SharedData.pixels_written = 0;
+        SharedData.pixels_rejected = 0;
+        SharedData.pixels_rejected_coarse = 0;
+        SharedData.objects_tile_rejected = 0;
+    }
 
-        // Reset frameBuffer
+    private void decayFrameBuffer() {
+        int[] lut = decayLut;
         for (int i = 0; i < frameBuffer.length; i++) {
-            frameBuffer[i] = BACKGROUND_COLOR;
+            int c = frameBuffer[i];
+            if ((c & 0x00FFFFFF) != 0) {
+                frameBuffer[i] = 0xFF000000
+                        | (lut[(c >> 16) & 0xFF] << 16)
+                        | (lut[(c >> 8) & 0xFF] << 8)
+                        | lut[c & 0xFF];
+            }
         }
+    }
+
+    /**
+     * Moves to the next depth generation, clearing only when the tag wraps.
+     */
+    private void nextDepthGeneration() {
+        if (depthGeneration == MAX_GENERATION) {
+            clearDepth();
+        } else {
+            depthGeneration++;
+            depthKeyBase = (long) (MAX_GENERATION - depthGeneration) << DEPTH_Z_BITS;
+        }
+    }
 
+    private void clearDepth() {
         // Reset depthBuffer to a very large value
         // so that any drawn fragment is guaranteed to be closer.
         for (int i = 0; i < depthBuffer.length; i++) {
             depthBuffer[i] = Long.MAX_VALUE;
         }
+        depthGeneration = 0;
+        depthKeyBase = (long) MAX_GENERATION << DEPTH_Z_BITS;
     }
 
-    public void renderScene(Graphics g, long[] viewMatrix) {
-        for (int i = 0; i < renderables.size(); i++) {
-            SceneObject obj = (SceneObject) renderables.elementAt(i);
-            long[] local = getLocalTransform(obj);
-            long[] finalMatrix = FixedMatMath.multiply4x4(viewMatrix, local);
+    /**
+     * Depth buffer key of camera-space z in the current generation.
+     */
+    private long depthKey(long z) {
+        long biased = z + DEPTH_Z_BIAS;
+        if (biased < 0) {
+            biased = 0;
+        } else if (biased > DEPTH_Z_MAX) {
+            biased = DEPTH_Z_MAX;
+        }
+        return depthKeyBase | biased;
+    }
 
-            if (obj.material == null) {
-                FixedMatMath.releaseMatrix(local);
+    /**
+     * @param perspective projection matrix from createPerspective4x4
+     * @param camMatrix   view rotation only
+     * @param camPos      camera position; object translations are made
+     *                    relative to it before the view rotation is applied
+     * @param frustum     the plane set objects were culled against
+     */
+    public void renderScene(Graphics g, long[] perspective, long[] camMatrix, long[] camPos, Frustum frustum) {
+        this.frustum = frustum;
+        this.perspective = perspective;
+        buildRenderQueue();
+        boundMaterial = null;
+        for (int i = 0; i < queueSize; i++) {
+            SceneObject obj = queue[i];
+            if (obj.material != boundMaterial) {
+                bindMaterial(obj.material);
+            }
+            // Baked batches have an identity transform, so theirs is just -camPos.
+            // Model-view is affine; the projection is applied per point.
+            obj.getCameraRelativeTransform(camPos, relModel);
+            long[] modelView = FixedMatMath.multiplyAffine(camMatrix, relModel);
+            long[] finalMatrix = FixedMatMath.projectAffine(perspective, modelView);
+
+            // Everything nearer was drawn first, so whole objects can fail the tile test
+            if (isHiddenByTiles(finalMatrix, obj.model, obj.material.primitiveWidth)) {
+                SharedData.objects_tile_rejected++;
                 FixedMatMath.releaseMatrix(finalMatrix);
+                FixedMatMath.releaseAffine(modelView);
                 continue;
             }
 
+            int16Ready = Common.INT_TRANSFORM && prepareInt16(modelView, obj);
+            ensureClipCapacity(obj.model.vertices.length);
+
+            // Clusters only need testing when the whole object straddles the frustum
+            boolean cullClusters = obj.model.clusterCount > 1 && obj.visibility == Frustum.INTERSECT;
+
             if (obj.material.renderType == RenderEffects.TYPE_VERTICES) {
-                drawVertices(finalMatrix, obj);
+                drawVertices(modelView, cullClusters, obj);
             } else {
-                drawEdges(finalMatrix, obj);
+                drawEdges(modelView, cullClusters, obj);
             }
 
-            FixedMatMath.releaseMatrix(local);
             FixedMatMath.releaseMatrix(finalMatrix);
+            FixedMatMath.releaseAffine(modelView);
         }
 
-        g.drawRGB(frameBuffer, 0, width, 0, 0, width, height, true);
+        // Every pixel is opaque and premultiplied, so no alpha pass is needed
+        g.drawRGB(frameBuffer, 0, width, 0, 0, width, height, false);
         SharedData.renderables_num = getRenderables().size();
     }
 
-    private long[] getLocalTransform(SceneObject obj) {
-        long[] local = FixedMatMath.createIdentity4x4();
-
-        // Translate
-        long[] m = FixedMatMath.createTranslation4x4(obj.tx, obj.ty, obj.tz);
-        long[] temp = FixedMatMath.multiply4x4(local, m);
-        FixedMatMath.releaseMatrix(local);
-        FixedMatMath.releaseMatrix(m);
-        local = temp;
-
-        // Rotate Z
-        m = FixedMatMath.createRotationZ4x4(obj.rotZ);
-        temp = FixedMatMath.multiply4x4(local, m);
-        FixedMatMath.releaseMatrix(local);
-        FixedMatMath.releaseMatrix(m);
-        local = temp;
-
-        // Rotate Y
-        m = FixedMatMath.createRotationY4x4(obj.rotY);
-        temp = FixedMatMath.multiply4x4(local, m);
-        FixedMatMath.releaseMatrix(local);
-        FixedMatMath.releaseMatrix(m);
-        local = temp;
-
-        // Rotate X
-        m = FixedMatMath.createRotationX4x4(obj.rotX);
-        temp = FixedMatMath.multiply4x4(local, m);
-        FixedMatMath.releaseMatrix(local);
-        FixedMatMath.releaseMatrix(m);
-        local = temp;
-
-        // Scale
-        m = FixedMatMath.createScale4x4(obj.scale, obj.scale, obj.scale);
-        temp = FixedMatMath.multiply4x4(local, m);
-        FixedMatMath.releaseMatrix(local);
-        FixedMatMath.releaseMatrix(m);
-        local = temp;
-
-        return local;
+    /**
+     * Copies the renderables into the queue. Scene hands them over already
+     * sorted front-to-back (see Scene.drawsBefore); consecutive objects that
+     * share a material are drawn as one batch.
+     */
+    private void buildRenderQueue() {
+        int n = renderables.size();
+        if (queue.length < n) {
+            queue = new SceneObject[n];
+        }
+        queueSize = 0;
+        for (int i = 0; i < n; i++) {
+            SceneObject obj = (SceneObject) renderables.elementAt(i);
+            if (obj.material != null) {
+                queue[queueSize++] = obj;
+            }
+        }
+        for (int i = queueSize; i < n; i++) {
+            queue[i] = null;
+        }
     }
 
-    private void drawEdges(long[] finalM, SceneObject obj) {
-        Material mat = obj.material;
-        int[][] edges = obj.model.edges;
-        long[][] verts = obj.model.vertices;
+    /**
+     * Loads the material's state once for the batch that follows.
+     */
+    private void bindMaterial(Material mat) {
+        boundMaterial = mat;
+        batchNearQ = mat.nearMarginQ;
+        batchFarQ = mat.farMarginQ;
+        batchShadeLut = mat.shadeLut;
+        batchShadeShift = mat.shadeLutShift;
+        batchExactBelow = mat.shadeExactBelow;
+        batchShape = mat.primitiveShape;
+    }
 
-        long nearQ = mat.nearMarginQ;
-        long farQ = mat.farMarginQ;
-        long fadeNearQ = mat.fadeDistanceNearQ;
-        long fadeFarQ = mat.fadeDistanceFarQ;
+    /**
+     * True if the model's bounding sphere, projected to a screen rectangle,
+     * lies behind the max depth of every tile the rectangle covers.
+     */
+    private boolean isHiddenByTiles(long[] finalM, Model model, int primitiveWidth) {
+        FixedMatMath.transformPoint(finalM, model.boundingSphereCenter, scratch4a);
+        // Reach of the sphere along each clip-space row
+        long r = model.boundingSphereRadius;
+        long ex = FixedBaseMath.fixedMul(Model.length3(finalM[0], finalM[1], finalM[2]), r);
+        long ey = FixedBaseMath.fixedMul(Model.length3(finalM[4], finalM[5], finalM[6]), r);
+        long ez = FixedBaseMath.fixedMul(Model.length3(finalM[8], finalM[9], finalM[10]), r);
+        long ew = FixedBaseMath.fixedMul(Model.length3(finalM[12], finalM[13], finalM[14]), r);
+
+        long wNear = scratch4a[3] - ew;
+        if (wNear <= 0) {
+            return false; // reaches behind the camera
+        }
+        long wFar = scratch4a[3] + ew;
+        long x0 = scratch4a[0] - ex;
+        long x1 = scratch4a[0] + ex;
+        long y0 = scratch4a[1] - ey;
+        long y1 = scratch4a[1] + ey;
+        long minX = FixedBaseMath.fixedDiv(x0, (x0 >= 0) ? wFar : wNear);
+        long maxX = FixedBaseMath.fixedDiv(x1, (x1 >= 0) ? wNear : wFar);
+        long minY = FixedBaseMath.fixedDiv(y0, (y0 >= 0) ? wFar : wNear);
+        long maxY = FixedBaseMath.fixedDiv(y1, (y1 >= 0) ? wNear : wFar);
 
-        int nearColor = mat.colorNear;
-        int farColor  = mat.colorFar;
-        int ditherLevel = mat.ditherLevel;
-        int shape = mat.primitiveShape;
+        long halfW = precalc_halfW_Q;
+        long halfH = precalc_halfH_Q;
+        // Margin for marker shapes and wide primitives
+        int margin = (primitiveWidth >> 1) + 1;
+        int sx0 = FixedBaseMath.toInt(halfW + FixedBaseMath.fixedMul(minX, halfW)) - margin;
+        int sx1 = FixedBaseMath.toInt(halfW + FixedBaseMath.fixedMul(maxX, halfW)) + margin;
+        int sy0 = FixedBaseMath.toInt(halfH + FixedBaseMath.fixedMul(minY, halfH)) - margin;
+        int sy1 = FixedBaseMath.toInt(halfH + FixedBaseMath.fixedMul(maxY, halfH)) + margin;
+        if (sx0 < 0) sx0 = 0;
+        if (sy0 < 0) sy0 = 0;
+        if (sx1 >= width) sx1 = width - 1;
+        if (sy1 >= height) sy1 = height - 1;
+        if (sx0 > sx1 || sy0 > sy1) {
+            return false;
+        }
+        return tiles.rejectsRect(sx0, sy0, sx1, sy1, depthKey(scratch4a[2] - ez));
+    }
 
-        origin = new long[] {0, 0, 0, FixedBaseMath.FIXED1};
-        centerCam = new long[4];
-        FixedMatMath.transformPoint(finalM, origin, centerCam);
-        long centerCamZ = centerCam[2];
+    private void ensureClipCapacity(int n) {
+        if (clipX.length < n) {
+            clipX = new long[n];
+            clipY = new long[n];
+            clipZ = new long[n];
+            clipW = new long[n];
+            clipCodes = new int[n];
+        }
+    }
 
-        for (int i = 0; i < edges.length; i++) {
-            int i0 = edges[i][0];
-            int i1 = edges[i][1];
+    /**
+     * Loads the int transform path for an object. Vertices are then taken to
+     * camera space as the center plus the linear part times the offset, so
+     * how far away the object is does not matter, but the offsets only
+     * resolve about 2^-13 of the object's extent. That stays under half a
+     * pixel while the camera is at least an eighth of the radius outside the
+     * bounding sphere; nearer objects keep the 64-bit path.
+     */
+    private boolean prepareInt16(long[] modelView, SceneObject obj) {
+        FixedMatMath.transformPointAffine(modelView, obj.model.boundingSphereCenter, camCenter);
+        long radius = obj.boundingSphereRadiusScaled;
+        long distance = Model.length3(camCenter[0], camCenter[1], camCenter[2]);
+        if (distance - radius < (radius >> 3)) {
+            return false;
+        }
+        view16Shift = Fixed16MatMath.linearTerms(modelView, view16);
+        return true;
+    }
 
-            // Transform endpoints
-            FixedMatMath.transformPoint(finalM, verts[i0], scratch4a);
-            FixedMatMath.transformPoint(finalM, verts[i1], scratch4b);
+    /**
+     * Clip coordinates and outcodes of cluster c's vertex range, in one batch:
+     * the affine model-view, through the int path when it is loaded, then
+     * the projective step.
+     */
+    private void transformCluster(long[] modelView, Model model, int c) {
+        int from = model.clusterVertexStart[c];
+        int count = model.clusterVertexStart[c + 1] - from;
+        if (int16Ready) {
+            Fixed16MatMath.transformOffsets(view16, view16Shift, camCenter, perspective,
+                    model.local16X, model.local16Y, model.local16Z, model.local16Shift, from, count,
+                    clipX, clipY, clipZ, clipW, clipCodes);
+        } else {
+            FixedMatMath.transformPoints(modelView, perspective,
+                    model.vertexX, model.vertexY, model.vertexZ, from, count,
+                    clipX, clipY, clipZ, clipW, clipCodes);
+        }
+    }
+
+    /**
+     * True if cluster c's bounding sphere lies outside the frustum.
+     */
+    private boolean isClusterCulled(SceneObject obj, int c, long[] modelView) {
+        long[] spheres = obj.model.clusterSpheres;
+        int base = c * 4;
+        clusterCenter[0] = spheres[base];
+        clusterCenter[1] = spheres[base + 1];
+        clusterCenter[2] = spheres[base + 2];
+        FixedMatMath.transformPointAffine(modelView, clusterCenter, scratch4a);
+        long radius = FixedBaseMath.fixedMul(spheres[base + 3], obj.scale);
+        return frustum.testSphere(scratch4a[0], scratch4a[1], scratch4a[2], radius,
+                obj.material.farMarginQ) == Frustum.OUTSIDE;
+    }
 
-            // Project each endpoint to screen (primarily for x/y).
-            int[] screenP0 = projectPointToScreen(scratch3a, scratch4a, reusableScreenCoords0);
-            int[] screenP1 = projectPointToScreen(scratch3b, scratch4b, reusableScreenCoords1);
+    private void drawEdges(long[] modelView, boolean cullClusters, SceneObject obj) {
+        Material mat = boundMaterial;
+        Model model = obj.model;
+        int[][] edges = model.edges;
 
-            if (screenP0 == null || screenP1 == null) {
-                continue; // behind the camera or invalid
-            }
+        // Local depth cue around the fitted center over the model's own radius,
+        // as before baking; baked batches have scale 1, so theirs is in world units
+        FixedMatMath.transformPointAffine(modelView, model.boundingSphereCenter, camPoint);
+        FixedMatMath.projectPoint(perspective, camPoint, centerCam);
+        long centerCamZ = centerCam[2];
+        long localRadius = model.boundingSphereRadius;
+        long localScale = RenderEffects.localAlphaScale(localRadius);
 
-            // Camera-space z of endpoints
-            long distA = scratch4a[2];
-            long distB = scratch4b[2];
-            // For fade color, we can use midpoint or any heuristic:
-            long distMid = FixedBaseMath.fixedDiv(
-                    FixedBaseMath.fixedAdd(distA, distB),
-                    FixedBaseMath.FIXED2
-            );
-
-            // Distance fade
-            int alphaFade = RenderEffects.computeFadeAlpha(distMid, nearQ, farQ, fadeNearQ, fadeFarQ);
-            if (alphaFade <= 0) {
-                continue; // fully faded
+        for (int c = 0; c < model.clusterCount; c++) {
+            if (cullClusters && isClusterCulled(obj, c, modelView)) {
+                continue;
+            }
+            transformCluster(modelView, model, c);
+            int edgeEnd = model.clusterEdgeStart[c + 1];
+            for (int i = model.clusterEdgeStart[c]; i < edgeEnd; i++) {
+                int i0 = edges[i][0];
+                int i1 = edges[i][1];
+
+                // Behind the camera, or both endpoints past the same side
+                int code0 = clipCodes[i0];
+                int code1 = clipCodes[i1];
+                if (((code0 | code1) & FixedMatMath.CLIP_BEHIND) != 0 || (code0 & code1) != 0) {
+                    continue;
+                }
+
+                // Project each endpoint to screen (primarily for x/y).
+                int[] screenP0 = projectToScreen(i0, reusableScreenCoords0);
+                int[] screenP1 = projectToScreen(i1, reusableScreenCoords1);
+
+                if (screenP0 == null || screenP1 == null) {
+                    continue; // invalid
+                }
+
+                // Camera-space z of endpoints
+                long distA = clipZ[i0];
+                long distB = clipZ[i1];
+
+                // Color ramp and distance fade per endpoint, the line kernel
+                // interpolates between them
+                int shadedA = shadeAt(distA);
+                int shadedB = shadeAt(distB);
+                if (((shadedA | shadedB) >>> 24) == 0) {
+                    continue; // fully faded
+                }
+
+                // Combine with local alpha
+                int localAlpha0 = RenderEffects.computeLocalAlphaScaled(distA, centerCamZ, localRadius, localScale);
+                int localAlpha1 = RenderEffects.computeLocalAlphaScaled(distB, centerCamZ, localRadius, localScale);
+                int colorA = RenderEffects.premultiply(
+                        ((((shadedA >>> 24) * localAlpha0) >> 8) << 24) | (shadedA & 0x00FFFFFF));
+                int colorB = RenderEffects.premultiply(
+                        ((((shadedB >>> 24) * localAlpha1) >> 8) << 24) | (shadedB & 0x00FFFFFF));
+
+                // Draw the line with depth test, passing in the actual camera‐space Z for endpoints
+                RenderLine.drawLine(
+                        mat,
+                        width, height,
+                        frameBuffer,
+                        depthBuffer, // pass depthBuffer
+                        tiles,
+                        screenP0[0], screenP0[1], depthKey(distA),
+                        screenP1[0], screenP1[1], depthKey(distB),
+                        colorA, colorB
+                );
             }
-            // TODO: improve interpolation?
-            //int blendedRGB = RenderEffects.interpolateColor(distMid, nearQ, farQ, nearColor, farColor);
-            int blendedRGB = nearColor;
-            
-            // Combine with local alpha
-            int alphaOrig = (blendedRGB >>> 24) & 0xFF;
-            int alphaCombined = (alphaOrig * alphaFade) >> 8;
-
-            int localAlpha0 = RenderEffects.computeLocalAlphaFromCameraSpace(distA, centerCamZ, obj.model.boundingSphereRadius);
-            int localAlpha1 = RenderEffects.computeLocalAlphaFromCameraSpace(distB, centerCamZ, obj.model.boundingSphereRadius);
-            int localAlpha  = (localAlpha0 + localAlpha1) >> 1;
-
-            alphaCombined = (alphaCombined * localAlpha) >> 8;
-            if (alphaCombined > 255) alphaCombined = 255;
-
-            int r = (blendedRGB >>> 16) & 0xFF;
-            int g = (blendedRGB >>> 8)  & 0xFF;
-            int b = (blendedRGB       )  & 0xFF;
-
-            // Final ARGB color with "darkening alpha" but we won't blend on the framebuffer, just store
-            int finalColor = (alphaCombined << 24) | (r << 16) | (g << 8) | b;
-
-            // Draw the line with depth test, passing in the actual camera‐space Z for endpoints
-            RenderLine.drawLineDither(
-                    shape,
-                    width, height,
-                    frameBuffer,
-                    depthBuffer, // pass depthBuffer
-                    screenP0[0], screenP0[1], distA,
-                    screenP1[0], screenP1[1], distB,
-                    finalColor,
-                    ditherLevel
-            );
         }
     }
 
-    private void drawVertices(long[] finalM, SceneObject obj) {
-        Material mat = obj.material;
-        if (mat == null) {
-            return;
-        }
-        long nearQ = mat.nearMarginQ;
-        long farQ  = mat.farMarginQ;
-        long fadeNearQ = mat.fadeDistanceNearQ;
-        long fadeFarQ  = mat.fadeDistanceFarQ;
-        int nearColor = mat.colorNear;
-        int farColor  = mat.colorFar;
-        int shape     = mat.primitiveShape;
-
-        long[][] verts = obj.model.vertices;
+    private void drawVertices(long[] modelView, boolean cullClusters, SceneObject obj) {
+        int shape = batchShape;
+        int blendMode = boundMaterial.blendMode;
+        int size = boundMaterial.primitiveWidth;
+        int[] ditherRows = boundMaterial.ditherRows;
+        int ditherRowShift = boundMaterial.ditherRowShift;
+        int ditherMask = boundMaterial.ditherMask;
+        int coverageShift = boundMaterial.coverageShift;
 
-        for (int v = 0; v < verts.length; v++) {
-            FixedMatMath.transformPoint(finalM, verts[v], scratch4a);
+        Model model = obj.model;
 
-            int[] screenV = projectPointToScreen(scratch3a, scratch4a, reusableScreenCoords0);
-            if (screenV == null) {
+        for (int c = 0; c < model.clusterCount; c++) {
+            if (cullClusters && isClusterCulled(obj, c, modelView)) {
                 continue;
             }
-
-            long dist = scratch4a[2];
-            int alphaFade = RenderEffects.computeFadeAlpha(dist, nearQ, farQ, fadeNearQ, fadeFarQ);
-            if (alphaFade <= 0) {
-                continue;
+            transformCluster(modelView, model, c);
+            int vertexEnd = model.clusterVertexStart[c + 1];
+            for (int v = model.clusterVertexStart[c]; v < vertexEnd; v++) {
+                // Points past a side can still reach the screen with their size
+                if ((clipCodes[v] & FixedMatMath.CLIP_BEHIND) != 0) {
+                    continue;
+                }
+
+                int[] screenV = projectToScreen(v, reusableScreenCoords0);
+                if (screenV == null) {
+                    continue;
+                }
+
+                long dist = clipZ[v];
+                int finalColor = shadeAt(dist);
+                if ((finalColor >>> 24) == 0) {
+                    continue;
+                }
+                // Ordered dither by the vertex's coverage, as for lines
+                if (ditherRows != null) {
+                    int coverage = (finalColor >>> 24) >>> coverageShift;
+                    int rowBits = ditherRows[(coverage << ditherRowShift) | (screenV[1] & ditherMask)];
+                    if (((rowBits >>> (screenV[0] & ditherMask)) & 1) == 0) {
+                        continue;
+                    }
+                }
+                finalColor = RenderEffects.premultiply(finalColor);
+
+                // Draw the single vertex with depth test
+                RenderVertex.drawVertex(
+                        shape,
+                        blendMode,
+                        size,
+                        width, height,
+                        frameBuffer,
+                        depthBuffer,
+                        tiles,
+                        screenV[0], screenV[1],
+                        depthKey(dist), // camera‐space Z as a depth key
+                        finalColor
+                );
             }
-            // TODO: improve interpolation?
-            //int blendedRGB = RenderEffects.interpolateColor(dist, nearQ, farQ, nearColor, farColor);
-            int blendedRGB = nearColor;
-            
-            // Combine final alpha
-            int a = (blendedRGB >>> 24) & 0xFF;
-            a = (a * alphaFade) >> 8;
-            if (a > 255) a = 255;
-
-            int r = (blendedRGB >>> 16) & 0xFF;
-            int g = (blendedRGB >>>  8) & 0xFF;
-            int b = (blendedRGB       ) & 0xFF;
-
-            int finalColor = (a << 24) | (r << 16) | (g << 8) | b;
-
-            // Draw the single vertex with depth test
-            RenderVertex.drawVertex(
-                    shape,
-                    width, height,
-                    frameBuffer,
-                    depthBuffer,
-                    screenV[0], screenV[1],
-                    dist,         // pass the camera‐space Z
-                    finalColor
-            );
         }
     }
 
     /**
-     * Returns screen coords [sx, sy, z_mapped] in reusableBuffer, or null if invalid.
-     * We still compute a [0..1] z_mapped, but for actual depth testing, we use p[2] directly.
+     * Shaded color of the bound material at depth z, zero outside its margins.
      */
-    private int[] projectPointToScreen(long[] scratch, long[] p, int[] reusableBuffer) {
-        if (p[3] <= 0) {
-            return null; // behind camera in homogeneous sense
+    private int shadeAt(long z) {
+        if (z < batchNearQ || z > batchFarQ) {
+            return 0;
         }
-        long x = FixedBaseMath.fixedDiv(p[0], p[3]);
-        long y = FixedBaseMath.fixedDiv(p[1], p[3]);
-        long z = p[2];
+        if (z < batchExactBelow) {
+            return boundMaterial.shade(z);
+        }
+        return batchShadeLut[(int) ((z - batchNearQ) >> batchShadeShift)];
+    }
+
+    /**
+     * Returns screen coords [sx, sy, z_mapped] of clip vertex v in
+     * reusableBuffer, or null if invalid. Callers have already rejected
+     * CLIP_BEHIND. We still compute a [0..1] z_mapped, but for actual depth
+     * testing, we use clipZ directly.
+     */
+    private int[] projectToScreen(int v, int[] reusableBuffer) {
+        long w = clipW[v];
+        long x = FixedBaseMath.fixedDiv(clipX[v], w);
+        long y = FixedBaseMath.fixedDiv(clipY[v], w);
+        long z = clipZ[v];
 
         long halfW = precalc_halfW_Q;
         long halfH = precalc_halfH_Q;
@@ -30,5 +30,12 @@ public class RendererUI {
         int ren = SharedData.renderables_num;
         stringA = "FPS: " + currentFPS + " Renderables: " + ren;
         g.drawString(stringA, 2, 2, Graphics.TOP | Graphics.LEFT);
+        stringA = "Px written: " + SharedData.pixels_written + " rejected: " + SharedData.pixels_rejected
+                + " (" + SharedData.pixels_rejected_coarse + " tile)";
+        g.drawString(stringA, 2, 16, Graphics.TOP | Graphics.LEFT);
+        stringA = "Occluded: " + SharedData.objects_occluded;
+        g.drawString(stringA, 2, 30, Graphics.TOP | Graphics.LEFT);
+        stringA = "Tile-rejected: " + SharedData.objects_tile_rejected;
+        g.drawString(stringA, 2, 44, Graphics.TOP | Graphics.LEFT);
     }
 }
@@ -2,7 +2,6 @@ package Renderer;
 
 import FixedMath.FixedMatMath;
 import FixedMath.FixedBaseMath;
-import FixedMath.FixedTrigMath;
 import javax.microedition.lcdui.Canvas;
 import javax.microedition.lcdui.Graphics;
 import java.util.Vector;
@@ -13,35 +12,153 @@ public class Scene {
     private Vector visibleObjects;
     private Renderer renderer;
     private RendererUI rendererUI;
-    private long fovQ, aspectQ, nearQ, farQ;
     private int fovDegrees = 60;
     private static final int FOV_MIN = 10, FOV_MAX = 120;
     private Camera camera;
     private Perspective perspective;
     private static final long MOVE_STEP = FixedBaseMath.toFixed(0.1f);
     private static final long ROT_STEP = FixedBaseMath.toFixed(0.01f);
+    // Scaled radius above which a sphere straddling the frustum is re-tested by its AABB
+    private static final long AABB_REFINE_RADIUS = FixedBaseMath.toFixed(1000.0f);
+    private Frustum frustum;
+    private int frustumVersion = -1; // perspective version the frustum was built from
+    private int cameraVersion = -1;  // camera version the last cull ran against
+
+    // Scratch arrays for culling
+    private long[] centerWorld = new long[4];
+    private long[] centerCam = new long[4];
+    private long[] corner = new long[3];
+    private long[] boxCorners = new long[24];
+    private long[] occluderOrigin = new long[3];
+    private long[] relative = new long[3];
+    private long[] relModel = new long[16];
 
     public Scene(int capacity, long fovQ, long aspectQ, long nearQ, long farQ) {
         objects = new Vector(capacity);
         visibleObjects = new Vector(capacity);
         renderer = new Renderer();
         rendererUI = new RendererUI();
-        this.fovQ = fovQ;
-        this.aspectQ = aspectQ;
-        this.nearQ = nearQ;
-        this.farQ = farQ;
         camera = new Camera();
         perspective = new Perspective(fovQ, aspectQ, nearQ, farQ);
+        frustum = new Frustum();
     }
 
     public Camera getCamera() {
         return camera;
     }
 
+    /**
+     * Objects in the scene, counting each baked batch once.
+     */
+    public int getObjectCount() {
+        return objects.size();
+    }
+
     public void addObject(SceneObject obj) {
         objects.addElement(obj);
     }
 
+    /**
+     * Pre-transforms static objects into world space and merges those whose
+     * materials have the same render state (Material.hasSameRenderState)
+     * into one batch with an identity transform. Call once after
+     * the scene is populated; per frame a batch then costs one cull test and
+     * the view-projection transform of its vertices.
+     */
+    public void bakeStaticObjects() {
+        Vector groups = new Vector();
+        for (int i = 0; i < objects.size(); i++) {
+            SceneObject obj = (SceneObject) objects.elementAt(i);
+            if (!isBakeable(obj)) {
+                continue;
+            }
+            Vector group = null;
+            for (int k = 0; k < groups.size(); k++) {
+                Vector candidate = (Vector) groups.elementAt(k);
+                if (((SceneObject) candidate.elementAt(0)).material.hasSameRenderState(obj.material)) {
+                    group = candidate;
+                    break;
+                }
+            }
+            if (group == null) {
+                group = new Vector();
+                groups.addElement(group);
+            }
+            group.addElement(obj);
+        }
+
+        // Each batch takes the slot of its first member
+        Vector baked = new Vector(objects.size());
+        for (int i = 0; i < objects.size(); i++) {
+            SceneObject obj = (SceneObject) objects.elementAt(i);
+            if (!isBakeable(obj)) {
+                baked.addElement(obj);
+                continue;
+            }
+            for (int k = 0; k < groups.size(); k++) {
+                Vector group = (Vector) groups.elementAt(k);
+                if (group.elementAt(0) == obj) {
+                    baked.addElement(mergeWorldSpace(group));
+                    break;
+                }
+            }
+        }
+        objects = baked;
+    }
+
+    /**
+     * Occluders stay separate: their inner sphere is defined around their own
+     * model origin, which a merged batch no longer has.
+     */
+    private static boolean isBakeable(SceneObject obj) {
+        return obj.isStatic && !obj.worldSpace && obj.material != null && obj.occluderRadius == 0;
+    }
+
+    private SceneObject mergeWorldSpace(Vector group) {
+        int vertexCount = 0;
+        int edgeCount = 0;
+        for (int i = 0; i < group.size(); i++) {
+            Model m = ((SceneObject) group.elementAt(i)).model;
+            vertexCount += m.vertices.length;
+            edgeCount += m.edges.length;
+        }
+        long[][] vertices = new long[vertexCount][];
+        int[][] edges = new int[edgeCount][];
+        int vertexBase = 0;
+        int edgeBase = 0;
+        long[] world = new long[4];
+        for (int i = 0; i < group.size(); i++) {
+            SceneObject obj = (SceneObject) group.elementAt(i);
+            obj.updateLocalTransform();
+            Model m = obj.model;
+            for (int v = 0; v < m.vertices.length; v++) {
+                FixedMatMath.transformPoint(obj.localTransform, m.vertices[v], world);
+                vertices[vertexBase + v] = new long[]{world[0], world[1], world[2]};
+            }
+            for (int e = 0; e < m.edges.length; e++) {
+                edges[edgeBase + e] = new int[]{
+                    m.edges[e][0] + vertexBase, m.edges[e][1] + vertexBase
+                };
+            }
+            vertexBase += m.vertices.length;
+            edgeBase += m.edges.length;
+        }
+
+        SceneObject batch = new SceneObject(new Model(vertices, edges));
+        batch.material = ((SceneObject) group.elementAt(0)).material;
+        batch.isStatic = true;
+        batch.worldSpace = true;
+        batch.updateLocalTransform();
+        return batch;
+    }
+
+    /**
+     * Leaves fading trails instead of clearing; see Renderer.setPersistence.
+     */
+    public void setPersistence(int decay, int interval) {
+        renderer.setPersistence(decay, interval);
+    }
+
     public void resetCamera() {
         camera.setPosition(0, 0, 0);
         camera.setOrientation(new long[]{0, 0, 0, FixedBaseMath.FIXED1});
@@ -63,9 +180,7 @@ public class Scene {
             deg = FOV_MAX;
         }
         fovDegrees = deg;
-        long fq = FixedBaseMath.toFixed((float) deg);
-        perspective.setFov(fq);
-        this.fovQ = fq;
+        perspective.setFov(FixedBaseMath.fromInt(deg));
     }
 
     public void handleKeyPressed(int keyCode, int gameAction, int moveMultiplier) {
@@ -102,75 +217,221 @@ public class Scene {
     }
 
     public void renderAll(Graphics g) {
-        long[] viewMatrix = FixedMatMath.multiply4x4(perspective.getPerspectiveMatrix(), camera.getViewMatrix());
+        // Rotation-only view; translations are taken relative to camPos first
+        long[] camRot = camera.getRotationViewMatrix();
+        long[] camPos = camera.getPosition();
+        // Frustum planes depend on the projection only
+        boolean viewChanged = cameraVersion != camera.getVersion();
+        if (frustumVersion != perspective.getVersion()) {
+            frustum.update(perspective.getFov(), perspective.getAspect(), perspective.getNear());
+            frustumVersion = perspective.getVersion();
+            viewChanged = true;
+        }
+        cameraVersion = camera.getVersion();
         renderer.clearBuffers(g);
         visibleObjects.removeAllElements();
         for (int i = 0; i < objects.size(); i++) {
             SceneObject obj = (SceneObject) objects.elementAt(i);
-            if (isObjectVisible(obj, camera.getViewMatrix())) {
+            boolean moved = !obj.isStatic || obj.localTransform == null;
+            if (moved) {
+                obj.advanceRotation();
+                obj.updateLocalTransform();
+            }
+            // A static object's camera-space cull state only changes with the view
+            if (moved || viewChanged) {
+                obj.inFrustum = isObjectVisible(obj, camRot, camPos);
+            }
+            obj.visible = obj.inFrustum;
+        }
+        // Objects keep last frame's order, so this is close to linear
+        sortFrontToBack();
+        cullOccluded(camRot, camPos);
+        for (int i = 0; i < objects.size(); i++) {
+            SceneObject obj = (SceneObject) objects.elementAt(i);
+            if (obj.visible) {
                 visibleObjects.addElement(obj);
             }
         }
         renderer.setRenderables(visibleObjects, SharedData.halfW_Q24_8, SharedData.halfH_Q24_8);
-        renderer.renderScene(g, viewMatrix);
+        renderer.renderScene(g, perspective.getPerspectiveMatrix(), camRot, camPos, frustum);
         rendererUI.updateFPS();
         rendererUI.printFPS(g);
-        FixedMatMath.releaseMatrix(viewMatrix);
-    }
-
-    private boolean isObjectVisible(SceneObject obj, long[] camMat) {
-        long[] centerCam = FixedMatMath.acquireMatrix();
-        long[] center = FixedMatMath.acquireMatrix();
-        center[0] = obj.tx;
-        center[1] = obj.ty;
-        center[2] = obj.tz;
-        center[3] = FixedBaseMath.FIXED1;
-        
-        long cull_far = obj.material.farMarginQ;
-        //long cull_near = obj.material.nearMarginQ;
-
-        FixedMatMath.transformPoint(camMat, center, centerCam);
-        long cx = centerCam[0];
-        long cy = centerCam[1];
-        long cz = centerCam[2];
-        long cw = centerCam[3];
-        if (cw <= 0) {
-            FixedMatMath.releaseMatrix(center);
-            FixedMatMath.releaseMatrix(centerCam);
-            return false;
+    }
+
+    /**
+     * Insertion sort of all objects by depth. Nearer fragments are written
+     * first so that the ones behind them fail the depth test instead of
+     * overwriting the framebuffer. Translucent objects follow the opaque
+     * ones, back to front, since they blend instead of writing depth.
+     */
+    private void sortFrontToBack() {
+        int n = objects.size();
+        for (int i = 1; i < n; i++) {
+            SceneObject obj = (SceneObject) objects.elementAt(i);
+            int j = i;
+            while (j > 0 && drawsBefore(obj, (SceneObject) objects.elementAt(j - 1))) {
+                objects.setElementAt(objects.elementAt(j - 1), j);
+                j--;
+            }
+            objects.setElementAt(obj, j);
         }
-        long invW = FixedBaseMath.fixedDiv(FixedBaseMath.FIXED1, cw);
-        cx = FixedBaseMath.fixedMul(cx, invW);
-        cy = FixedBaseMath.fixedMul(cy, invW);
-        cz = FixedBaseMath.fixedMul(cz, invW);
-        long distQ = -cz;
-        long radius = -obj.boundingSphereRadiusScaled;
+    }
 
-        if (FixedBaseMath.fixedAdd(distQ, radius) > cull_far) {
-            FixedMatMath.releaseMatrix(center);
-            FixedMatMath.releaseMatrix(centerCam);
-            return false;
+    /**
+     * Opaque objects go front-to-back by depth band, and within a band by
+     * material sort key, so objects sharing a material at similar distances
+     * draw as one batch. Translucent ones need strict back-to-front order.
+     */
+    private static boolean drawsBefore(SceneObject a, SceneObject b) {
+        if (a.material == null || b.material == null) {
+            return a.depth < b.depth;
         }
-        long halfFovDegQ = FixedBaseMath.fixedDiv(fovQ, FixedBaseMath.FIXED2);
-        long halfFovRadQ = FixedBaseMath.toFixed(FixedTrigMath.degreesToRadians(FixedBaseMath.toFloat(halfFovDegQ)));
-        long tanHalfVertFovQ = FixedTrigMath.tan(halfFovRadQ);
-        long tanHalfHorizFovQ = FixedBaseMath.fixedMul(tanHalfVertFovQ, aspectQ);
-        long absCX = (cx < 0) ? -cx : cx;
-        long lrLimit = FixedBaseMath.fixedMul(distQ, tanHalfHorizFovQ);
-        if (FixedBaseMath.fixedAdd(absCX, radius) > lrLimit) {
-            FixedMatMath.releaseMatrix(center);
-            FixedMatMath.releaseMatrix(centerCam);
-            return false;
+        if (a.material.translucent != b.material.translucent) {
+            return b.material.translucent;
+        }
+        if (a.material.translucent) {
+            return a.depth > b.depth;
         }
-        long absCY = (cy < 0) ? -cy : cy;
-        long tbLimit = FixedBaseMath.fixedMul(distQ, tanHalfVertFovQ);
-        if (FixedBaseMath.fixedAdd(absCY, radius) > tbLimit) {
-            FixedMatMath.releaseMatrix(center);
-            FixedMatMath.releaseMatrix(centerCam);
+        if (a.depthBand != b.depthBand) {
+            return a.depthBand < b.depthBand;
+        }
+        if (a.material.sortKey != b.material.sortKey) {
+            return a.material.sortKey < b.material.sortKey;
+        }
+        return a.depth < b.depth;
+    }
+
+    private boolean isObjectVisible(SceneObject obj, long[] camRot, long[] camPos) {
+        // Fitted sphere center, model -> world -> camera
+        FixedMatMath.transformPointAffine(obj.localTransform, obj.model.boundingSphereCenter, centerWorld);
+        toCamera(camRot, camPos, centerWorld, centerCam);
+
+        long cullFar = obj.material.farMarginQ;
+        long radius = obj.boundingSphereRadiusScaled;
+        int result = frustum.testSphere(centerCam[0], centerCam[1], centerCam[2], radius, cullFar);
+        obj.visibility = result;
+        obj.depth = viewDepth(centerCam, radius);
+        obj.depthBand = (obj.depth > 0) ? FixedBaseMath.highestBit(obj.depth) : 0;
+        obj.viewX = centerCam[0];
+        obj.viewY = centerCam[1];
+        obj.viewZ = centerCam[2];
+        if (result == Frustum.OUTSIDE) {
             return false;
         }
-        FixedMatMath.releaseMatrix(center);
-        FixedMatMath.releaseMatrix(centerCam);
+        // Large objects straddling a plane get a second look with their box
+        if (result == Frustum.INTERSECT && radius >= AABB_REFINE_RADIUS) {
+            return !isBoxOutside(obj, camRot, camPos, cullFar);
+        }
         return true;
     }
+
+    /**
+     * Hides visible objects whose bounding sphere projects entirely inside
+     * the disk of a nearer occluder. Projection is onto the z = -1 plane,
+     * which keeps the test independent of the FOV and screen size.
+     */
+    private void cullOccluded(long[] camRot, long[] camPos) {
+        SharedData.objects_occluded = 0;
+        int n = objects.size();
+        for (int i = 0; i < n; i++) {
+            SceneObject occ = (SceneObject) objects.elementAt(i);
+            if (!occ.visible || occ.occluderRadius == 0) {
+                continue;
+            }
+            occluderOrigin[0] = occ.tx;
+            occluderOrigin[1] = occ.ty;
+            occluderOrigin[2] = occ.tz;
+            toCamera(camRot, camPos, occluderOrigin, centerCam);
+            long occDepth = -centerCam[2];
+            long occRadius = FixedBaseMath.fixedMul(occ.occluderRadius, occ.scale);
+            if (occDepth <= occRadius) {
+                continue; // camera inside or beside the occluder
+            }
+            long diskX = FixedBaseMath.fixedDiv(centerCam[0], occDepth);
+            long diskY = FixedBaseMath.fixedDiv(centerCam[1], occDepth);
+            long diskR = FixedBaseMath.fixedDiv(occRadius, occDepth);
+            long diskR2 = FixedBaseMath.fixedMul(diskR, diskR);
+
+            for (int k = 0; k < n; k++) {
+                SceneObject obj = (SceneObject) objects.elementAt(k);
+                if (k == i || !obj.visible) {
+                    continue;
+                }
+                if (isInsideDisk(obj, occDepth, diskX, diskY, diskR2)) {
+                    obj.visible = false;
+                    SharedData.objects_occluded++;
+                }
+            }
+        }
+    }
+
+    /**
+     * True if the object's sphere lies wholly behind the occluder center and
+     * its conservative projected rectangle falls inside the occluder disk.
+     */
+    private static boolean isInsideDisk(SceneObject obj, long occDepth,
+            long diskX, long diskY, long diskR2) {
+        long r = obj.boundingSphereRadiusScaled;
+        long nearDepth = -obj.viewZ - r;
+        if (nearDepth <= occDepth) {
+            return false;
+        }
+        long farDepth = -obj.viewZ + r;
+        long x0 = obj.viewX - r;
+        long x1 = obj.viewX + r;
+        long y0 = obj.viewY - r;
+        long y1 = obj.viewY + r;
+        // Extremes of x / depth over the sphere's box
+        long minX = FixedBaseMath.fixedDiv(x0, (x0 >= 0) ? farDepth : nearDepth) - diskX;
+        long maxX = FixedBaseMath.fixedDiv(x1, (x1 >= 0) ? nearDepth : farDepth) - diskX;
+        long minY = FixedBaseMath.fixedDiv(y0, (y0 >= 0) ? farDepth : nearDepth) - diskY;
+        long maxY = FixedBaseMath.fixedDiv(y1, (y1 >= 0) ? nearDepth : farDepth) - diskY;
+        // The disk is convex, so the rectangle is inside if all corners are
+        long dx2 = Math.max(FixedBaseMath.fixedMul(minX, minX), FixedBaseMath.fixedMul(maxX, maxX));
+        long dy2 = Math.max(FixedBaseMath.fixedMul(minY, minY), FixedBaseMath.fixedMul(maxY, maxY));
+        return dx2 + dy2 <= diskR2;
+    }
+
+    /**
+     * Camera-space position of a world point: subtract the camera position,
+     * then rotate.
+     */
+    private void toCamera(long[] camRot, long[] camPos, long[] world, long[] out) {
+        relative[0] = world[0] - camPos[0];
+        relative[1] = world[1] - camPos[1];
+        relative[2] = world[2] - camPos[2];
+        FixedMatMath.transformPointAffine(camRot, relative, out);
+    }
+
+    /**
+     * View depth of the sphere center in whole units. Spheres around the
+     * camera (star fields, skyboxes) are backdrops and sort last.
+     */
+    private static int viewDepth(long[] center, long radius) {
+        long cx = (center[0] < 0) ? -center[0] : center[0];
+        long cy = (center[1] < 0) ? -center[1] : center[1];
+        long cz = (center[2] < 0) ? -center[2] : center[2];
+        if (cx < radius && cy < radius && cz < radius) {
+            return Integer.MAX_VALUE;
+        }
+        return FixedBaseMath.toInt(-center[2]);
+    }
+
+    private boolean isBoxOutside(SceneObject obj, long[] camRot, long[] camPos, long cullFar) {
+        obj.getCameraRelativeTransform(camPos, relModel);
+        long[] modelView = FixedMatMath.multiplyAffine(camRot, relModel);
+        long[] min = obj.model.aabbMin;
+        long[] max = obj.model.aabbMax;
+        for (int i = 0; i < 8; i++) {
+            corner[0] = ((i & 1) == 0) ? min[0] : max[0];
+            corner[1] = ((i & 2) == 0) ? min[1] : max[1];
+            corner[2] = ((i & 4) == 0) ? min[2] : max[2];
+            FixedMatMath.transformPointAffine(modelView, corner, centerCam);
+            boxCorners[i * 3] = centerCam[0];
+            boxCorners[i * 3 + 1] = centerCam[1];
+            boxCorners[i * 3 + 2] = centerCam[2];
+        }
+        FixedMatMath.releaseAffine(modelView);
+        return frustum.isBoxOutside(boxCorners, 8, cullFar);
+    }
 }
@@ -1,16 +1,27 @@
 package Renderer;
 
 import FixedMath.FixedBaseMath;
+import FixedMath.FixedQuatMath;
 
 public class SceneObject {
 
     public Model model;   // the geometry
     public long tx, ty, tz;     // translation in Q
-    public long rotX, rotY, rotZ; // rotation angles in Q
+    public final long[] orientation = new long[]{0, 0, 0, FixedBaseMath.FIXED1}; // unit quaternion [x, y, z, w] in Q
+    public long[] angularVelocity; // body-frame rotation per frame [x, y, z], radians in Q; null when not spinning
     public long scale;          // uniform scale in Q
     public int depth; // Calculated depth for rendering
+    public int depthBand; // power-of-two band of depth; opaque objects batch by material within one
     public Material material;
     public long boundingSphereRadiusScaled;
+    public long[] localTransform; // model-to-world matrix, refreshed once per frame
+    public int visibility; // Frustum.INSIDE or INTERSECT from the last cull
+    public boolean visible; // passed culling this frame
+    public boolean inFrustum; // passed the frustum test, before occlusion; reused while nothing moved
+    public boolean isStatic;   // transform never changes after setup
+    public boolean worldSpace; // model vertices are already baked into world space
+    public long occluderRadius; // solid inner sphere around the model origin, model units in Q; 0 = not an occluder
+    public long viewX, viewY, viewZ; // camera-space bounding sphere center from the last cull
 
     public SceneObject(Model model) {
         this.model = model;
@@ -22,4 +33,49 @@ public class SceneObject {
     public void updateBoundingSphereRadiusScaled() {
         boundingSphereRadiusScaled = FixedBaseMath.fixedMul(model.boundingSphereRadius, scale);
     }
+
+    /**
+     * Copies localTransform into out with its translation made relative to
+     * camPos. The subtraction is exact, so far-away objects near the camera
+     * keep full precision in the products that follow.
+     */
+    public void getCameraRelativeTransform(long[] camPos, long[] out) {
+        for (int i = 0; i < 16; i++) {
+            out[i] = localTransform[i];
+        }
+        out[3] -= camPos[0];
+        out[7] -= camPos[1];
+        out[11] -= camPos[2];
+    }
+
+    /**
+     * Sets the orientation from Euler angles in radians (Q), applied X, then
+     * Y, then Z.
+     */
+    public void setRotation(long rotX, long rotY, long rotZ) {
+        FixedQuatMath.fromEuler(rotX, rotY, rotZ, orientation);
+    }
+
+    /**
+     * Turns the orientation by one frame of angularVelocity, if any.
+     */
+    public void advanceRotation() {
+        if (angularVelocity != null) {
+            FixedQuatMath.integrate(orientation, angularVelocity[0], angularVelocity[1], angularVelocity[2]);
+        }
+    }
+
+    /**
+     * Rebuilds localTransform as T * R * S, shared by culling and drawing.
+     */
+    public void updateLocalTransform() {
+        if (localTransform == null) {
+            localTransform = new long[16];
+        }
+        long[] m = localTransform;
+        FixedQuatMath.toRotationMatrix(orientation, scale, m);
+        m[3] = tx;
+        m[7] = ty;
+        m[11] = tz;
+    }
 }
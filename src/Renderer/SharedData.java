@@ -8,4 +8,10 @@ public class SharedData {
     public static long halfW_Q24_8 = FixedBaseMath.toFixed(display_width / 2);
     public static long halfH_Q24_8 = FixedBaseMath.toFixed(display_height / 2);
     public static int renderables_num = 0;
+    // Per-frame fragment counters, for measuring overdraw
+    public static int pixels_written = 0;
+    public static int pixels_rejected = 0;
+    public static int pixels_rejected_coarse = 0; // part of pixels_rejected caught by DepthTiles
+    public static int objects_occluded = 0;      // hidden by sphere occluders, see Scene.cullOccluded
+    public static int objects_tile_rejected = 0; // hidden by DepthTiles before drawing
 }